@@ -0,0 +1,71 @@
+package org.example.fractalgenerator.benchmarks;
+
+import org.example.fractalgenerator.AcceleratedMandelbrotKernel;
+import org.example.fractalgenerator.EscapeTimeEngine;
+import org.example.fractalgenerator.JuliaKernel;
+import org.example.fractalgenerator.MandelbrotKernel;
+import org.example.fractalgenerator.RenderParams;
+import org.example.fractalgenerator.Viewport;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Time to compute the iteration counts of one full frame at the application's canvas size, with
+// every core working on it
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class EscapeTimeBenchmark {
+    static final int WIDTH = 1200;
+    static final int HEIGHT = 800;
+    // Seahorse valley, which stays on the set's boundary at every zoom
+    static final double CENTER_X = -0.743643887037151;
+    static final double CENTER_Y = 0.131825904205330;
+
+    // "exact" and "subdivided" are the Mandelbrot set with the interior shortcuts
+    @Param({"mandelbrot", "exact", "subdivided", "julia"})
+    public String fractal;
+
+    @Param({"100", "1000", "10000"})
+    public int maxIterations;
+
+    @Param({"1", "1000", "1000000"})
+    public double zoom;
+
+    private EscapeTimeEngine engine;
+    private Viewport view;
+    private RenderParams params;
+    private int[] iterations;
+
+    @Setup
+    public void setup() {
+        engine = new EscapeTimeEngine();
+        engine.setVectorized(false);
+        view = new Viewport(WIDTH, HEIGHT, zoom, -CENTER_X, -CENTER_Y);
+        params = params(fractal, maxIterations);
+        iterations = new int[WIDTH * HEIGHT];
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public int[] frame() {
+        engine.render(view, params, iterations);
+        return iterations;
+    }
+
+    static RenderParams params(String fractal, int maxIterations) {
+        return switch (fractal) {
+            case "julia" -> new RenderParams(new JuliaKernel(), -0.7, 0.27015, maxIterations);
+            case "exact" -> new RenderParams(new AcceleratedMandelbrotKernel(false), 0, 0, maxIterations);
+            case "subdivided" -> new RenderParams(new AcceleratedMandelbrotKernel(true), 0, 0, maxIterations);
+            default -> new RenderParams(new MandelbrotKernel(), 0, 0, maxIterations);
+        };
+    }
+}
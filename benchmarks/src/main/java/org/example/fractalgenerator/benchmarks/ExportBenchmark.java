@@ -0,0 +1,63 @@
+package org.example.fractalgenerator.benchmarks;
+
+import org.example.fractalgenerator.BandSource;
+import org.example.fractalgenerator.ImageExporter;
+import org.example.fractalgenerator.ImageSink;
+import org.example.fractalgenerator.PngStreamWriter;
+import org.example.fractalgenerator.RawImageWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Export throughput for a 4096x4096 image. The bands come from a precomputed frame so only the
+// banding, encoding and writing are measured; multiply 64 MiB by the ops/s score for MiB/s
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+    private static final int SIZE = 4096;
+
+    private int[] image;
+    private BandSource source;
+    private Path rawFile;
+
+    @Setup
+    public void setup() throws IOException {
+        // Smooth gradients with some noise, so the PNG filter and deflate have realistic work
+        image = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int noise = (x * 31 + y * 17) & 7;
+                image[y * SIZE + x] = 0xFF000000 | ((x >> 4) << 16) | ((y >> 4) << 8) | (((x ^ y) & 0xF8) + noise);
+            }
+        }
+        source = (y0, rows, argb) -> System.arraycopy(image, y0 * SIZE, argb, 0, rows * SIZE);
+        rawFile = Files.createTempFile("fractal-benchmark", ".raw");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(rawFile);
+    }
+
+    @Benchmark
+    public void png() throws IOException {
+        try (ImageSink sink = new PngStreamWriter(OutputStream.nullOutputStream(), SIZE, SIZE)) {
+            ImageExporter.export(source, SIZE, SIZE, sink, progress -> { });
+        }
+    }
+
+    @Benchmark
+    public void raw() throws IOException {
+        try (ImageSink sink = new RawImageWriter(rawFile, SIZE, SIZE)) {
+            ImageExporter.export(source, SIZE, SIZE, sink, progress -> { });
+        }
+    }
+}
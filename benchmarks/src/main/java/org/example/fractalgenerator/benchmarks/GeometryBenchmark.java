@@ -0,0 +1,44 @@
+package org.example.fractalgenerator.benchmarks;
+
+import org.example.fractalgenerator.GeometryRasterizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Time to generate and rasterize the Sierpinski triangle and Koch snowflake into a full frame
+// as the recursion depth grows
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeometryBenchmark {
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    @Param({"sierpinski", "koch"})
+    public String shape;
+
+    @Param({"2", "4", "6", "8"})
+    public int depth;
+
+    private GeometryRasterizer rasterizer;
+    private int[] frame;
+
+    @Setup
+    public void setup() {
+        rasterizer = new GeometryRasterizer(EscapeTimeBenchmark.WIDTH, EscapeTimeBenchmark.HEIGHT);
+        frame = new int[EscapeTimeBenchmark.WIDTH * EscapeTimeBenchmark.HEIGHT];
+    }
+
+    @Benchmark
+    public int[] frame() {
+        if (shape.equals("koch")) {
+            rasterizer.koch(frame, 0, EscapeTimeBenchmark.HEIGHT, depth, BLACK, WHITE);
+        } else {
+            rasterizer.sierpinski(frame, 0, EscapeTimeBenchmark.HEIGHT, depth, BLACK, WHITE);
+        }
+        return frame;
+    }
+}
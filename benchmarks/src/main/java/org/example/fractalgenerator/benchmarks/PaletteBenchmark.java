@@ -0,0 +1,65 @@
+package org.example.fractalgenerator.benchmarks;
+
+import javafx.scene.paint.Color;
+import org.example.fractalgenerator.GradientPalette;
+import org.example.fractalgenerator.MonochromePalette;
+import org.example.fractalgenerator.Palette;
+import org.example.fractalgenerator.RainbowPalette;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cost of building a palette's lookup table, paid whenever the palette or the iteration count
+// changes, and of mapping a frame of iteration counts through it, paid on every frame
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaletteBenchmark {
+
+    @Param({"monochrome", "rainbow", "fire"})
+    public String palette;
+
+    @Param({"256", "4096", "65536"})
+    public int maxIterations;
+
+    private Palette colors;
+    private int[] table;
+    private int[] counts;
+    private int[] frame;
+
+    @Setup
+    public void setup() throws IOException {
+        colors = switch (palette) {
+            case "rainbow" -> new RainbowPalette();
+            case "fire" -> GradientPalette.loadResource("Fire", "palettes/fire.gradient");
+            default -> new MonochromePalette();
+        };
+        table = colors.buildTable(maxIterations, Color.BLACK);
+        counts = new int[EscapeTimeBenchmark.WIDTH * EscapeTimeBenchmark.HEIGHT];
+        frame = new int[counts.length];
+        // Random counts defeat any locality a real frame would give the table lookups
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = random.nextInt(maxIterations + 1);
+        }
+    }
+
+    @Benchmark
+    public int[] buildTable() {
+        return colors.buildTable(maxIterations, Color.BLACK);
+    }
+
+    @Benchmark
+    public int[] mapFrame() {
+        int[] lut = table;
+        for (int i = 0; i < counts.length; i++) {
+            frame[i] = lut[counts[i]];
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.fractalgenerator.benchmarks;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import org.example.fractalgenerator.EscapeTimeEngine;
+import org.example.fractalgenerator.MandelbrotKernel;
+import org.example.fractalgenerator.RainbowPalette;
+import org.example.fractalgenerator.RenderParams;
+import org.example.fractalgenerator.Viewport;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Coloring one Rainbow frame with the old per-pixel PixelWriter.setColor path against a color
+// table written through a single setPixels call. The GC profiler of BenchmarkMain reports the
+// bytes each path allocates per frame
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PixelWriteBenchmark {
+    private static final int WIDTH = EscapeTimeBenchmark.WIDTH;
+    private static final int HEIGHT = EscapeTimeBenchmark.HEIGHT;
+
+    @Param({"500"})
+    public int maxIterations;
+
+    private int[] iterations;
+    private WritableImage image;
+    private int[] framebuffer;
+
+    @Setup
+    public void setup() {
+        EscapeTimeEngine engine = new EscapeTimeEngine();
+        iterations = new int[WIDTH * HEIGHT];
+        engine.render(new Viewport(WIDTH, HEIGHT, 1.0, 0, 0),
+                new RenderParams(new MandelbrotKernel(), 0, 0, maxIterations), iterations);
+        engine.shutdown();
+        image = new WritableImage(WIDTH, HEIGHT);
+        framebuffer = new int[WIDTH * HEIGHT];
+    }
+
+    // The coloring loop as it was before the framebuffer
+    @Benchmark
+    public WritableImage perPixel() {
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                int iter = maxIterations - iterations[y * WIDTH + x];
+                image.getPixelWriter().setColor(x, y, rainbow(iter));
+            }
+        }
+        return image;
+    }
+
+    // The coloring loop used by RenderPipeline
+    @Benchmark
+    public WritableImage bulk() {
+        int[] colors = new RainbowPalette().buildTable(maxIterations, Color.BLACK);
+        for (int i = 0; i < framebuffer.length; i++) {
+            framebuffer[i] = colors[iterations[i]];
+        }
+        image.getPixelWriter().setPixels(0, 0, WIDTH, HEIGHT, PixelFormat.getIntArgbPreInstance(),
+                framebuffer, 0, WIDTH);
+        return image;
+    }
+
+    private Color rainbow(int iter) {
+        if (iter == maxIterations) return Color.BLACK;
+        return Color.hsb(360.0 * iter / maxIterations, 1, 1);
+    }
+}
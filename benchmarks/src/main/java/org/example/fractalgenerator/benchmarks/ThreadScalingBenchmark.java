@@ -0,0 +1,56 @@
+package org.example.fractalgenerator.benchmarks;
+
+import org.example.fractalgenerator.EscapeTimeEngine;
+import org.example.fractalgenerator.RenderParams;
+import org.example.fractalgenerator.Viewport;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Frame time for a fixed view as the worker count grows, with and without the SIMD kernel.
+// Divide the single-thread time by the others to get the speedup per extra core
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ThreadScalingBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean simd;
+
+    @Param({"mandelbrot", "julia"})
+    public String fractal;
+
+    private EscapeTimeEngine engine;
+    private Viewport view;
+    private RenderParams params;
+    private int[] iterations;
+
+    @Setup
+    public void setup() {
+        engine = new EscapeTimeEngine(threads);
+        if (engine.setVectorized(simd) != simd) {
+            throw new IllegalStateException("Vector API module not available, run with --add-modules jdk.incubator.vector");
+        }
+        view = new Viewport(EscapeTimeBenchmark.WIDTH, EscapeTimeBenchmark.HEIGHT, 1000,
+                -EscapeTimeBenchmark.CENTER_X, -EscapeTimeBenchmark.CENTER_Y);
+        params = EscapeTimeBenchmark.params(fractal, 1000);
+        iterations = new int[view.width() * view.height()];
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public int[] frame() {
+        engine.render(view, params, iterations);
+        return iterations;
+    }
+}
@@ -2,7 +2,18 @@ module org.example.fractalgenerator {
     requires javafx.controls;
     requires javafx.fxml;
     requires javafx.swing;
+    requires jdk.management;
+    // Frame and tile events for Flight Recorder, see RenderMetrics
+    requires jdk.jfr;
+    // Optional, only used when started with --add-modules jdk.incubator.vector
+    requires static jdk.incubator.vector;
+    // Compiles user formulas, see FormulaKernel
+    requires java.compiler;
 
+    uses org.example.fractalgenerator.FractalKernel;
+    provides org.example.fractalgenerator.FractalKernel with
+            org.example.fractalgenerator.MandelbrotKernel,
+            org.example.fractalgenerator.JuliaKernel;
 
     opens org.example.fractalgenerator to javafx.fxml;
     exports org.example.fractalgenerator;
@@ -0,0 +1,320 @@
+package org.example.fractalgenerator;
+
+import javafx.scene.paint.Color;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+// Renders the frames of a keyframe animation into numbered PNG files. Frames are not computed one
+// by one: a key image is iterated at supersample times the frame size, a little wider than the
+// frame, and every following frame that lies inside it at no more than its resolution is
+// downsampled from it. A steady zoom in by a factor of supersample per key therefore iterates
+// supersample^2 frames' worth of pixels per key instead of per frame.
+// Frames go through three stages on their own threads, iterating keys on the calling thread,
+// coloring and downsampling, and PNG encoding, so frame N + 1 is iterated while frame N is
+// colored and frame N - 1 is encoded. At most PIPELINE_DEPTH frames are in flight at a time
+public class AnimationRenderer {
+    private static final String USAGE = """
+            Usage: AnimationRenderer --keyframes FILE --out DIRECTORY [options]
+              --keyframes FILE          lines of "time centerX,centerY zoom [juliaCX,juliaCY]", time in seconds
+              --type T                  mandelbrot (default), julia, formula or a bundled formula NAME
+              --formula F               formula for --type formula
+              --fps N                   frames per second (default 30)
+              --width N, --height N     frame size in pixels (default 1280 x 720)
+              --iterations N            iteration count, or auto (default) to pick one from the zoom
+              --supersample N           key image resolution per frame pixel (default 2); 1 renders
+                                        every frame on its own
+              --accelerate MODE         off (default), exact or subdivide, as for HeadlessRenderer
+              --palette NAME            monochrome, rainbow (default), custom, fire, ocean or a .gradient file
+              --color C                 custom palette color (default black)
+              --inside C                inside color (default black)
+              --coloring MODE           plain (default), smooth, equalized or smooth-equalized
+            Frames are written as DIRECTORY/frame-00000.png and so on, ready for e.g.
+              ffmpeg -framerate 30 -i DIRECTORY/frame-%05d.png zoom.mp4""";
+
+    // Frames between the iterating and the encoding stage
+    private static final int PIPELINE_DEPTH = 3;
+
+    // Iteration counts of a key image, covering frames near its view
+    private record Key(BigDecimal centerX, BigDecimal centerY, double zoom, double juliaCX, double juliaCY,
+                       int width, int height, int maxIterations, int[] counts, float[] smooth) {
+    }
+
+    private final EscapeTimeEngine engine;
+    private final FractalKernel kernel;
+    private final Palette palette;
+    private final Color insideColor;
+    private final int width;
+    private final int height;
+    private int supersample = 2;
+    // 0 to pick the count of each key from its zoom
+    private int iterations;
+    private boolean smooth;
+    private boolean equalize;
+    // Only touched by the coloring thread: the last key, its palette table and its colored pixels
+    private Key coloredKey;
+    private int[] keyColors;
+    private int[] keyPixels;
+
+    public AnimationRenderer(EscapeTimeEngine engine, FractalKernel kernel, Palette palette, Color insideColor,
+                             int width, int height) {
+        this.engine = engine;
+        this.kernel = kernel;
+        this.palette = palette;
+        this.insideColor = insideColor;
+        this.width = width;
+        this.height = height;
+    }
+
+    public void setSupersample(int supersample) {
+        if (supersample < 1) throw new IllegalArgumentException("Supersample must be at least 1");
+        this.supersample = supersample;
+    }
+
+    // Iteration count of every frame, or 0 to pick it from the zoom
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public void setColoring(boolean smooth, boolean equalize) {
+        this.smooth = smooth;
+        this.equalize = equalize;
+    }
+
+    public static void main(String[] args) {
+        try {
+            Map<String, String> options = HeadlessRenderer.parseOptions(args);
+            long start = System.nanoTime();
+            int frames = render(options);
+            System.out.printf("Wrote %d frames to %s in %.1f s%n", frames, options.get("out"),
+                    (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Failed to render animation: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Render the animation described by parsed command line options, returning the frame count
+    public static int render(Map<String, String> options) throws IOException {
+        String keyframesFile = options.get("keyframes");
+        String out = options.get("out");
+        if (keyframesFile == null) throw new IllegalArgumentException("Missing --keyframes");
+        if (out == null) throw new IllegalArgumentException("Missing --out");
+        List<Keyframe> keyframes = Keyframe.load(Path.of(keyframesFile));
+        String type = options.getOrDefault("type", "mandelbrot");
+        FractalKernel kernel = HeadlessRenderer.escapeTimeKernel(type, options);
+        Palette palette = HeadlessRenderer.palette(options.getOrDefault("palette", "rainbow"),
+                Color.web(options.getOrDefault("color", "black")));
+        String coloring = options.getOrDefault("coloring", "plain");
+        if (!List.of("plain", "smooth", "equalized", "smooth-equalized").contains(coloring)) {
+            throw new IllegalArgumentException("Unknown coloring: " + coloring);
+        }
+        String iterations = options.getOrDefault("iterations", "auto");
+        double fps = Double.parseDouble(options.getOrDefault("fps", "30"));
+        if (!(fps > 0)) throw new IllegalArgumentException("--fps must be positive");
+
+        EscapeTimeEngine engine = new EscapeTimeEngine();
+        try {
+            AnimationRenderer renderer = new AnimationRenderer(engine, kernel, palette,
+                    Color.web(options.getOrDefault("inside", "black")),
+                    Integer.parseInt(options.getOrDefault("width", "1280")),
+                    Integer.parseInt(options.getOrDefault("height", "720")));
+            renderer.setSupersample(Integer.parseInt(options.getOrDefault("supersample", "2")));
+            renderer.setIterations(iterations.equals("auto") ? 0 : Integer.parseInt(iterations));
+            renderer.setColoring(coloring.startsWith("smooth"), coloring.endsWith("equalized"));
+            Path directory = Path.of(out);
+            Files.createDirectories(directory);
+            int count = frameCount(keyframes, fps);
+            int[] reported = {0};
+            renderer.render(keyframes, fps, directory, done -> {
+                int tenths = done * 10 / count;
+                if (tenths > reported[0]) {
+                    reported[0] = tenths;
+                    System.out.printf("%d%% (%d frames)%n", tenths * 10, done);
+                }
+            });
+            return count;
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    // Frames from the first to the last keyframe, both included
+    public static int frameCount(List<Keyframe> keyframes, double fps) {
+        double duration = keyframes.getLast().time() - keyframes.getFirst().time();
+        return (int) Math.floor(duration * fps + 1e-9) + 1;
+    }
+
+    // Render every frame into directory, reporting the number of frames written so far. Stops with
+    // InterruptedIOException if the thread is interrupted
+    public void render(List<Keyframe> keyframes, double fps, Path directory, IntConsumer progress)
+            throws IOException {
+        int count = frameCount(keyframes, fps);
+        double start = keyframes.getFirst().time();
+        int[][] frames = new int[PIPELINE_DEPTH][width * height];
+        Future<?>[] encoded = new Future<?>[PIPELINE_DEPTH];
+        ExecutorService colorer = Executors.newSingleThreadExecutor(r -> stageThread(r, "fractal-animation-color"));
+        ExecutorService encoder = Executors.newSingleThreadExecutor(r -> stageThread(r, "fractal-animation-encoder"));
+        try {
+            Key key = null;
+            Keyframe shot = Keyframe.at(keyframes, start);
+            for (int i = 0; i < count; i++) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Animation cancelled");
+                Keyframe next = Keyframe.at(keyframes, start + (i + 1) / fps);
+                if (key == null || !covers(key, shot)) key = renderKey(shot, next);
+                // The frame buffer is free again once the frame PIPELINE_DEPTH back is written
+                int slot = i % PIPELINE_DEPTH;
+                ImageExporter.await(encoded[slot]);
+                if (encoded[slot] != null) progress.accept(i - PIPELINE_DEPTH + 1);
+                int[] frame = frames[slot];
+                Key source = key;
+                Keyframe view = shot;
+                Future<?> colored = colorer.submit(() -> downsample(source, view, frame));
+                Path file = directory.resolve(String.format("frame-%05d.png", i));
+                encoded[slot] = encoder.submit(() -> {
+                    colored.get();
+                    try (ImageSink sink = new PngStreamWriter(new BufferedOutputStream(Files.newOutputStream(file)),
+                            width, height)) {
+                        sink.writeRows(frame, 0, height);
+                    }
+                    return null;
+                });
+                shot = next;
+            }
+            for (int i = Math.max(0, count - PIPELINE_DEPTH); i < count; i++) {
+                ImageExporter.await(encoded[i % PIPELINE_DEPTH]);
+                progress.accept(i + 1);
+            }
+        } finally {
+            colorer.shutdownNow();
+            encoder.shutdownNow();
+        }
+    }
+
+    private static Thread stageThread(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // True if the frame lies inside the key with at least one key pixel per frame pixel, and shares
+    // the Julia constant
+    private boolean covers(Key key, Keyframe shot) {
+        if (kernel.julia() && (key.juliaCX() != shot.juliaCX() || key.juliaCY() != shot.juliaCY())) return false;
+        if (shot.zoom() * width > key.zoom() * key.width() * (1 + 1e-9)) return false;
+        // Half the width and height of each view in fractal units, see Viewport
+        double dx = Math.abs(shot.centerX().subtract(key.centerX()).doubleValue());
+        double dy = Math.abs(shot.centerY().subtract(key.centerY()).doubleValue());
+        return dx + 1.5 / shot.zoom() <= 1.5 / key.zoom() * (1 + 1e-9)
+                && dy + 1 / shot.zoom() <= 1 / key.zoom() * (1 + 1e-9);
+    }
+
+    // Iterate a key image for shot. Its zoom is chosen so it also covers the frames after it for as
+    // long as possible: zooming in, the key starts at the frame's own zoom; zooming out, it is as
+    // far out as its resolution allows; otherwise it leaves a margin all round for panning. While
+    // the Julia constant changes no other frame can use the key, so it is just the frame
+    private Key renderKey(Keyframe shot, Keyframe next) {
+        double zoom = shot.zoom();
+        boolean shared = !kernel.julia() || (next.juliaCX() == shot.juliaCX() && next.juliaCY() == shot.juliaCY());
+        int scale = shared ? supersample : 1;
+        if (shared && next.zoom() < zoom) zoom /= supersample;
+        else if (shared && next.zoom() == zoom) zoom /= Math.sqrt(supersample);
+        int keyWidth = width * scale;
+        int keyHeight = height * scale;
+        int maxIterations = iterations > 0 ? iterations : IterationBudget.fromZoom(zoom * scale);
+
+        Viewport view;
+        FractalKernel keyKernel = kernel;
+        if (!kernel.julia() && kernel instanceof MandelbrotKernel && zoom >= PerturbationKernel.DEEP_ZOOM) {
+            // Pixels are iterated relative to the exact center
+            keyKernel = new PerturbationKernel(shot.centerX(), shot.centerY(), zoom, maxIterations);
+            view = new Viewport(keyWidth, keyHeight, zoom, 0, 0);
+        } else {
+            view = new Viewport(keyWidth, keyHeight, zoom, -shot.centerX().doubleValue(), -shot.centerY().doubleValue());
+        }
+        RenderParams params = new RenderParams(keyKernel, shot.juliaCX(), shot.juliaCY(), maxIterations, smooth);
+        int[] counts = new int[keyWidth * keyHeight];
+        float[] fractions = smooth ? new float[counts.length] : null;
+        engine.renderRegion(view, params, 0, 0, keyWidth, keyHeight, counts, fractions, 0, keyWidth);
+        return new Key(shot.centerX(), shot.centerY(), zoom, shot.juliaCX(), shot.juliaCY(),
+                keyWidth, keyHeight, maxIterations, counts, fractions);
+    }
+
+    // Color the key, then average the key pixels under each frame pixel into frame. Without
+    // equalization a key is colored once for all its frames. Equalized, every frame is colored by
+    // the histogram of the key pixels it shows, as if it had been rendered on its own, so the
+    // colors change smoothly from frame to frame instead of jumping whenever a new key starts
+    private void downsample(Key key, Keyframe shot, int[] frame) {
+        // Key pixels under each frame column and row, from the frame pixel's center minus half a
+        // pixel to its center plus half a pixel
+        double dx = shot.centerX().subtract(key.centerX()).doubleValue();
+        double dy = shot.centerY().subtract(key.centerY()).doubleValue();
+        int[] columns = spans(width, key.width(), 1.5 / (0.5 * shot.zoom() * width),
+                0.5 * key.zoom() * key.width() / 1.5, dx);
+        int[] rows = spans(height, key.height(), 1 / (0.5 * shot.zoom() * height),
+                0.5 * key.zoom() * key.height(), dy);
+        if (key != coloredKey || equalize) {
+            if (key != coloredKey) keyColors = palette.buildTable(key.maxIterations(), insideColor);
+            if (keyPixels == null || keyPixels.length != key.counts().length) keyPixels = new int[key.counts().length];
+            ColoringPass coloring = new ColoringPass(keyColors, equalize).withHistogramOf(key.counts(), key.width(),
+                    columns[0], rows[0], columns[2 * width - 1] - columns[0], rows[2 * height - 1] - rows[0]);
+            coloring.color(key.counts(), key.smooth(), key.width(), 1, key.maxIterations(),
+                    keyPixels, key.width(), key.height());
+            coloredKey = key;
+        }
+        int[] pixels = keyPixels;
+        int keyWidth = key.width();
+        IntStream.range(0, height).parallel().forEach(y -> {
+            int rowStart = rows[2 * y];
+            int rowEnd = rows[2 * y + 1];
+            for (int x = 0; x < width; x++) {
+                int columnStart = columns[2 * x];
+                int columnEnd = columns[2 * x + 1];
+                long a = 0, r = 0, g = 0, b = 0;
+                for (int j = rowStart; j < rowEnd; j++) {
+                    for (int i = j * keyWidth + columnStart; i < j * keyWidth + columnEnd; i++) {
+                        int argb = pixels[i];
+                        a += argb >>> 24;
+                        r += (argb >> 16) & 0xff;
+                        g += (argb >> 8) & 0xff;
+                        b += argb & 0xff;
+                    }
+                }
+                long n = (long) (rowEnd - rowStart) * (columnEnd - columnStart);
+                frame[y * width + x] = (int) ((a + n / 2) / n) << 24 | (int) ((r + n / 2) / n) << 16
+                        | (int) ((g + n / 2) / n) << 8 | (int) ((b + n / 2) / n);
+            }
+        });
+    }
+
+    // Start and end key pixel of each of size frame pixels along one axis, where a frame pixel is
+    // unitsPerPixel fractal units wide, the key has keyPixelsPerUnit pixels per unit, and the frame
+    // center lies offset units from the key center
+    private static int[] spans(int size, int keySize, double unitsPerPixel, double keyPixelsPerUnit, double offset) {
+        int[] spans = new int[2 * size];
+        for (int p = 0; p < size; p++) {
+            double from = keySize / 2 + ((p - 0.5 - size / 2) * unitsPerPixel + offset) * keyPixelsPerUnit;
+            double to = keySize / 2 + ((p + 0.5 - size / 2) * unitsPerPixel + offset) * keyPixelsPerUnit;
+            int start = Math.clamp((long) Math.ceil(from - 1e-9), 0, keySize - 1);
+            int end = Math.clamp((long) Math.ceil(to - 1e-9), start + 1, keySize);
+            spans[2 * p] = start;
+            spans[2 * p + 1] = end;
+        }
+        return spans;
+    }
+}
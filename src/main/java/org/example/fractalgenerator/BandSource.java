@@ -0,0 +1,12 @@
+package org.example.fractalgenerator;
+
+import java.io.IOException;
+
+// Produces an image one horizontal band of rows at a time, so large images never have to be
+// held in memory as a whole
+@FunctionalInterface
+public interface BandSource {
+
+    // Fill argb with rows [y0, y0 + rows) as premultiplied ARGB, one image row after the other
+    void renderBand(int y0, int rows, int[] argb) throws IOException;
+}
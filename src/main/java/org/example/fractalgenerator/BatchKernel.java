@@ -0,0 +1,10 @@
+package org.example.fractalgenerator;
+
+// Iterates z = z^2 + c for many points in one call, so an implementation can work on several
+// points at a time. Results must be identical to MandelbrotKernel for every point
+public interface BatchKernel {
+
+    // For each i below count, iterate from z = (zx[i], zy[i]) with c = (cx[i], cy[i]) and store the
+    // number of iterations performed before |z| reached 2, or maxIterations, in out[i]
+    void iterate(double[] zx, double[] zy, double[] cx, double[] cy, int count, int maxIterations, int[] out);
+}
@@ -0,0 +1,45 @@
+package org.example.fractalgenerator;
+
+import java.util.LinkedHashMap;
+import java.util.function.BiFunction;
+
+// Frame-sized buffers kept by image size. A window that is maximized and restored, or moved to a
+// screen with another scale, gets back the buffers it had at that size instead of new ones. Only
+// the buffers of the few most recently used sizes are kept, so memory stays bounded however often
+// the size changes
+public class BufferPool<T> {
+    private final int sizes;
+    private final BiFunction<Integer, Integer, T> factory;
+    // Keyed by width and height, least recently used first
+    private final LinkedHashMap<Long, T> buffers = new LinkedHashMap<>(16, 0.75f, true);
+    private long allocations;
+
+    // Keep the buffers of up to sizes image sizes, created by factory from a width and height
+    public BufferPool(int sizes, BiFunction<Integer, Integer, T> factory) {
+        if (sizes < 1) throw new IllegalArgumentException("A buffer pool needs room for at least one size");
+        this.sizes = sizes;
+        this.factory = factory;
+    }
+
+    // The buffers for width x height images, created if that size is not pooled
+    public synchronized T get(int width, int height) {
+        long key = (long) width << 32 | height;
+        T buffer = buffers.get(key);
+        if (buffer == null) {
+            buffer = factory.apply(width, height);
+            allocations++;
+            buffers.put(key, buffer);
+            var eldest = buffers.entrySet().iterator();
+            while (buffers.size() > sizes) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return buffer;
+    }
+
+    // How many times buffers had to be created
+    public synchronized long getAllocations() {
+        return allocations;
+    }
+}
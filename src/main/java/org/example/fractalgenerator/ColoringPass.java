@@ -0,0 +1,129 @@
+package org.example.fractalgenerator;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Turns finished iteration counts into pixels, rows in parallel, after the kernels are done with
+// them. Besides looking each count up in a palette table it can
+//  - blend the two table entries around a pixel's fractional escape value (smooth coloring), and
+//  - spread the escaped pixels evenly over the palette (histogram equalization): a histogram of
+//    the frame's counts, summed up with a parallel prefix sum, gives each count its rank among
+//    the escaped pixels, and the rank picks the table entry
+public class ColoringPass {
+    private final int[] colors;
+    private final boolean equalize;
+    // Table entry of every count, fixed in advance; null to work it out per frame when equalizing
+    private final int[] entries;
+
+    // colors maps a count from 0 to maxIterations to a premultiplied ARGB pixel, see Palette.buildTable
+    public ColoringPass(int[] colors, boolean equalize) {
+        this(colors, equalize, null);
+    }
+
+    private ColoringPass(int[] colors, boolean equalize, int[] entries) {
+        this.colors = colors;
+        this.equalize = equalize;
+        this.entries = entries;
+    }
+
+    public boolean equalizes() {
+        return equalize;
+    }
+
+    // A pass that equalizes by the histogram of these counts instead of each frame's own, so the
+    // bands of an exported image all get the same mapping
+    public ColoringPass withHistogramOf(int[] counts) {
+        if (!equalize) return this;
+        return new ColoringPass(colors, true, equalization(counts, 0, counts.length, 1, counts.length, 1,
+                colors.length - 1));
+    }
+
+    // Same by the histogram of only the w x h counts at (x0, y0) in rows of width counts, such as
+    // the part of a larger image that a frame shows
+    public ColoringPass withHistogramOf(int[] counts, int width, int x0, int y0, int w, int h) {
+        if (!equalize) return this;
+        return new ColoringPass(colors, true, equalization(counts, y0 * width + x0, width, 1, w, h,
+                colors.length - 1));
+    }
+
+    // Color w x h pixels, taking every step-th pixel of rows of width counts. smooth holds the
+    // fractional escape values for smooth coloring, or is null. Pixels whose count is inside have
+    // not escaped, which is maxIterations unless the counts were computed with a lower cap
+    public void color(int[] counts, float[] smooth, int width, int step, int inside, int[] frame, int w, int h) {
+        int[] table = entries != null ? entries : equalize ? equalization(counts, 0, width, step, w, h, inside) : null;
+        IntStream.range(0, h).parallel().forEach(y ->
+                colorRow(counts, smooth, y * step * width, step, inside, table, frame, y * w, w));
+    }
+
+    private void colorRow(int[] counts, float[] smooth, int src, int step, int inside, int[] table,
+                          int[] frame, int dst, int w) {
+        int top = colors.length - 1;
+        for (int x = 0; x < w; x++) {
+            int i = src + x * step;
+            int count = counts[i];
+            if (count == inside || count >= top) {
+                frame[dst + x] = colors[top];
+            } else if (count == 0 || smooth == null) {
+                frame[dst + x] = colors[table == null ? count : table[count]];
+            } else {
+                // Between the entries of the counts around the escape value, within the escaped range
+                float value = Math.max(1, Math.min(top - 1, smooth[i]));
+                int lower = Math.min((int) value, top - 2);
+                int weight = (int) ((value - lower) * 256);
+                int a = table == null ? lower : table[lower];
+                int b = table == null ? lower + 1 : table[lower + 1];
+                frame[dst + x] = blend(colors[a], colors[b], Math.min(weight, 256));
+            }
+        }
+    }
+
+    // Per channel a + (b - a) * weight / 256, premultiplied channels staying premultiplied
+    static int blend(int a, int b, int weight) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int ca = (a >>> shift) & 0xff;
+            int cb = (b >>> shift) & 0xff;
+            result |= (ca + (((cb - ca) * weight) >> 8)) << shift;
+        }
+        return result;
+    }
+
+    // Table entry for every count from 0 to top: escaped counts get entries 1 to top - 1 in
+    // proportion to the share of escaped pixels with a lower count, the rest keep their own.
+    // The histogram covers every step-th pixel of w x h starting at offset
+    private int[] equalization(int[] counts, int offset, int width, int step, int w, int h, int inside) {
+        int top = colors.length - 1;
+        if (top < 3) return null;
+        // One histogram per band of rows so the bands can be counted in parallel
+        int bands = Math.max(1, Math.min(h, ForkJoinPool.getCommonPoolParallelism()));
+        long[] histogram = IntStream.range(0, bands).parallel().mapToObj(band -> {
+            long[] local = new long[top + 1];
+            for (int y = band * h / bands; y < (band + 1) * h / bands; y++) {
+                int src = offset + y * step * width;
+                for (int x = 0; x < w; x++) {
+                    local[Math.min(counts[src + x * step], top)]++;
+                }
+            }
+            return local;
+        }).reduce((a, b) -> {
+            for (int i = 0; i <= top; i++) {
+                a[i] += b[i];
+            }
+            return a;
+        }).orElseThrow();
+        // Only escaped pixels are ranked
+        histogram[0] = 0;
+        histogram[inside] = 0;
+        histogram[top] = 0;
+        Arrays.parallelPrefix(histogram, Long::sum);
+        long escaped = histogram[top];
+        if (escaped == 0) return null;
+        int[] table = new int[top + 1];
+        for (int n = 1; n < top; n++) {
+            table[n] = 1 + (int) ((top - 2) * histogram[n - 1] / escaped);
+        }
+        table[top] = top;
+        return table;
+    }
+}
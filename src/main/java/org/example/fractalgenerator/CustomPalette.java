@@ -0,0 +1,17 @@
+package org.example.fractalgenerator;
+
+import javafx.scene.paint.Color;
+
+// Every escaped pixel gets the color chosen in the custom color picker
+public record CustomPalette(Color color) implements Palette {
+
+    @Override
+    public String name() {
+        return "Custom";
+    }
+
+    @Override
+    public Color escapeColor(int iterations, int maxIterations) {
+        return color;
+    }
+}
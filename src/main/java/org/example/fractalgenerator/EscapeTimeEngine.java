@@ -0,0 +1,442 @@
+package org.example.fractalgenerator;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+// Computes escape-time iteration counts in square tiles on a work-stealing pool. Mandelbrot and
+// Julia sets can optionally be iterated by the SIMD VectorKernel, which gives identical counts
+public class EscapeTimeEngine {
+    public static final int TILE_SIZE = 64;
+    // Pixels per task in renderPixels, about one tile
+    private static final int PIXEL_CHUNK = TILE_SIZE * TILE_SIZE;
+
+    private final ForkJoinPool pool;
+    // Null to iterate one point at a time
+    private volatile BatchKernel batchKernel;
+    // Null unless tile timings are wanted
+    private volatile RenderMetrics metrics;
+
+    // Use one worker per available core
+    public EscapeTimeEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public EscapeTimeEngine(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+        // On by default whenever the Vector API module is present, -Dfractal.simd=false turns it off
+        batchKernel = batchKernel(Boolean.parseBoolean(System.getProperty("fractal.simd", "true")));
+    }
+
+    // True if the SIMD kernel can be used in this JVM. Checked here rather than in VectorKernel so
+    // that class is never loaded without the Vector API module
+    public static boolean isVectorAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    // Switch between the SIMD and the scalar kernel; returns whether the SIMD kernel is now in use
+    public boolean setVectorized(boolean vectorized) {
+        batchKernel = batchKernel(vectorized);
+        return batchKernel != null;
+    }
+
+    private static BatchKernel batchKernel(boolean vectorized) {
+        return vectorized && isVectorAvailable() ? new VectorKernel() : null;
+    }
+
+    public boolean isVectorized() {
+        return batchKernel != null;
+    }
+
+    // Report the time and work of every tile to metrics, or to nothing if null
+    public void setMetrics(RenderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    // Compute the iteration count of every pixel of the viewport into a row-major buffer
+    public void render(Viewport view, RenderParams params, int[] iterations) {
+        renderRegion(view, params, 0, 0, view.width(), view.height(), iterations, 0, view.width());
+    }
+
+    // Compute the w x h block starting at pixel (x0, y0) into out[offset + row*stride + col]
+    public void renderRegion(Viewport view, RenderParams params, int x0, int y0, int w, int h,
+                             int[] out, int offset, int stride) {
+        renderRegion(view, params, x0, y0, w, h, out, null, offset, stride);
+    }
+
+    // Same, also storing fractional escape values in smooth at the same positions unless it is null
+    public void renderRegion(Viewport view, RenderParams params, int x0, int y0, int w, int h,
+                             int[] out, float[] smooth, int offset, int stride) {
+        renderRegion(view, params, x0, y0, w, h, 1, false, out, smooth, offset, stride, () -> false);
+    }
+
+    // Compute every step-th pixel of the viewport in both directions, step being a power of two.
+    // When refining, pixels on the 2*step grid are assumed to be done by the previous pass and are
+    // skipped. Returns false if the pass was cancelled before it finished
+    public boolean renderPass(Viewport view, RenderParams params, int step, boolean refine,
+                              int[] iterations, BooleanSupplier cancelled) {
+        return renderPass(view, params, step, refine, iterations, null, cancelled);
+    }
+
+    // Same, also storing fractional escape values in smooth unless it is null
+    public boolean renderPass(Viewport view, RenderParams params, int step, boolean refine,
+                              int[] iterations, float[] smooth, BooleanSupplier cancelled) {
+        return renderRegion(view, params, 0, 0, view.width(), view.height(), step, refine,
+                iterations, smooth, 0, view.width(), cancelled);
+    }
+
+    private boolean renderRegion(Viewport view, RenderParams params, int x0, int y0, int w, int h,
+                                 int step, boolean refine, int[] out, float[] smooth, int offset, int stride,
+                                 BooleanSupplier cancelled) {
+        if (w <= 0 || h <= 0) return true;
+        // Tiles are laid out over the sampled pixels so every tile carries the same amount of work
+        int span = TILE_SIZE * step;
+        int tilesX = (w + span - 1) / span;
+        int tilesY = (h + span - 1) / span;
+        Region region = new Region(view, params, batchKernel, metrics, x0, y0, w, h, step, refine,
+                out, smooth, offset, stride, cancelled);
+        pool.invoke(new TileTask(region, tilesX, 0, tilesX * tilesY));
+        return !cancelled.getAsBoolean();
+    }
+
+    // One w x h block starting at pixel (x0, y0), written to out[offset + row*stride + col]
+    public record Block(int x0, int y0, int w, int h, int[] out, int offset, int stride) {
+    }
+
+    // Compute independent blocks, such as the missing tiles of a frame, all on the pool at once.
+    // Returns false if cancelled before every block finished
+    public boolean renderBlocks(Viewport view, RenderParams params, List<Block> blocks, BooleanSupplier cancelled) {
+        if (blocks.isEmpty()) return true;
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(blocks.stream().map(b -> {
+                    int tilesX = (b.w() + TILE_SIZE - 1) / TILE_SIZE;
+                    int tilesY = (b.h() + TILE_SIZE - 1) / TILE_SIZE;
+                    Region region = new Region(view, params, batchKernel, metrics, b.x0(), b.y0(), b.w(), b.h(), 1, false,
+                            b.out(), null, b.offset(), b.stride(), cancelled);
+                    return new TileTask(region, tilesX, 0, tilesX * tilesY);
+                }).toList());
+            }
+        });
+        return !cancelled.getAsBoolean();
+    }
+
+    // Iterate the first count pixels listed in pixels, as row-major indices into the viewport, and
+    // store their counts in out and, unless null, fractional escape values in smooth at the same
+    // index. Used to go deeper on pixels that reached a lower iteration cap. Returns false if
+    // cancelled before every pixel was done
+    public boolean renderPixels(Viewport view, RenderParams params, int[] pixels, int count, int[] out,
+                                float[] smooth, BooleanSupplier cancelled) {
+        if (count == 0) return true;
+        BatchKernel batch = batchKernel;
+        int chunks = (count + PIXEL_CHUNK - 1) / PIXEL_CHUNK;
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(IntStream.range(0, chunks).mapToObj(chunk -> new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        if (cancelled.getAsBoolean()) return;
+                        int from = chunk * PIXEL_CHUNK;
+                        renderPixelChunk(view, params, batch, pixels, from, Math.min(count, from + PIXEL_CHUNK), out, smooth);
+                    }
+                }).toList());
+            }
+        });
+        return !cancelled.getAsBoolean();
+    }
+
+    private static void renderPixelChunk(Viewport view, RenderParams params, BatchKernel batch,
+                                         int[] pixels, int from, int to, int[] out, float[] smooth) {
+        FractalKernel kernel = params.kernel();
+        boolean julia = kernel.julia();
+        int width = view.width();
+        int maxIterations = params.maxIterations();
+        if (batch != null && smooth == null && kernel instanceof MandelbrotKernel) {
+            int n = to - from;
+            double[] zxs = new double[n];
+            double[] zys = new double[n];
+            double[] cxs = new double[n];
+            double[] cys = new double[n];
+            int[] counts = new int[n];
+            for (int i = 0; i < n; i++) {
+                int pixel = pixels[from + i];
+                zxs[i] = view.toFractalX(pixel % width);
+                zys[i] = view.toFractalY(pixel / width);
+                cxs[i] = julia ? params.juliaCX() : zxs[i];
+                cys[i] = julia ? params.juliaCY() : zys[i];
+            }
+            batch.iterate(zxs, zys, cxs, cys, n, maxIterations, counts);
+            for (int i = 0; i < n; i++) {
+                out[pixels[from + i]] = counts[i];
+            }
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            int pixel = pixels[i];
+            double zx = view.toFractalX(pixel % width);
+            double zy = view.toFractalY(pixel / width);
+            double cx = julia ? params.juliaCX() : zx;
+            double cy = julia ? params.juliaCY() : zy;
+            out[pixel] = smooth == null
+                    ? kernel.iterate(zx, zy, cx, cy, maxIterations)
+                    : kernel.iterate(zx, zy, cx, cy, maxIterations, smooth, pixel);
+        }
+    }
+
+    // Iterate every step-th pixel of a block, writing each result at its own pixel position
+    private static void renderBlock(Viewport view, RenderParams params, BatchKernel batch, int x0, int y0,
+                                    int w, int h, int step, boolean refine, int[] out, float[] smooth,
+                                    int offset, int stride) {
+        FractalKernel kernel = params.kernel();
+        if (kernel.subdivide()) {
+            new Subdivision(view, params, x0, y0, w, h, step, refine, out, smooth, offset, stride).render();
+            return;
+        }
+        // Only the quadratic formula has a batched version, and it has no smooth values
+        if (batch != null && smooth == null && kernel instanceof MandelbrotKernel) {
+            renderBlockBatched(view, params, batch, x0, y0, w, h, step, refine, out, offset, stride);
+            return;
+        }
+        boolean julia = kernel.julia();
+        double cX = params.juliaCX();
+        double cY = params.juliaCY();
+        int maxIterations = params.maxIterations();
+        int coarse = 2 * step - 1;
+        for (int y = y0; y < y0 + h; y += step) {
+            double zy = view.toFractalY(y);
+            int row = offset + (y - y0) * stride - x0;
+            // On rows of the coarser grid every other sample is already there
+            boolean skipEven = refine && (y & coarse) == 0;
+            for (int x = x0; x < x0 + w; x += step) {
+                if (skipEven && (x & coarse) == 0) continue;
+                double zx = view.toFractalX(x);
+                double cx = julia ? cX : zx;
+                double cy = julia ? cY : zy;
+                out[row + x] = smooth == null
+                        ? kernel.iterate(zx, zy, cx, cy, maxIterations)
+                        : kernel.iterate(zx, zy, cx, cy, maxIterations, smooth, row + x);
+            }
+        }
+    }
+
+    // Same as renderBlock, but hands each row's points to the batch kernel together
+    private static void renderBlockBatched(Viewport view, RenderParams params, BatchKernel batch, int x0, int y0,
+                                           int w, int h, int step, boolean refine, int[] out, int offset, int stride) {
+        boolean julia = params.kernel().julia();
+        double cX = params.juliaCX();
+        double cY = params.juliaCY();
+        int maxIterations = params.maxIterations();
+        int coarse = 2 * step - 1;
+        int samples = (w + step - 1) / step;
+        int[] xs = new int[samples];
+        double[] zxs = new double[samples];
+        double[] zys = new double[samples];
+        double[] cxs = new double[samples];
+        double[] cys = new double[samples];
+        int[] counts = new int[samples];
+        for (int y = y0; y < y0 + h; y += step) {
+            double zy = view.toFractalY(y);
+            int row = offset + (y - y0) * stride - x0;
+            boolean skipEven = refine && (y & coarse) == 0;
+            int n = 0;
+            for (int x = x0; x < x0 + w; x += step) {
+                if (skipEven && (x & coarse) == 0) continue;
+                double zx = view.toFractalX(x);
+                xs[n] = x;
+                zxs[n] = zx;
+                zys[n] = zy;
+                cxs[n] = julia ? cX : zx;
+                cys[n] = julia ? cY : zy;
+                n++;
+            }
+            batch.iterate(zxs, zys, cxs, cys, n, maxIterations, counts);
+            for (int i = 0; i < n; i++) {
+                out[row + xs[i]] = counts[i];
+            }
+        }
+    }
+
+    // Stop the worker threads
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // Mariani-Silver subdivision of one block: iterate the border of a rectangle of samples and
+    // fill its inside if the whole border has one count, otherwise split it in four and repeat
+    private static final class Subdivision {
+        private final Viewport view;
+        private final RenderParams params;
+        private final int x0, y0, step;
+        private final int[] out;
+        // Null unless fractional escape values are wanted
+        private final float[] smooth;
+        private final int offset, stride;
+        private final int columns, rows;
+        // Samples that are already in out, computed here or by the previous pass
+        private final boolean[] known;
+
+        Subdivision(Viewport view, RenderParams params, int x0, int y0, int w, int h,
+                    int step, boolean refine, int[] out, float[] smooth, int offset, int stride) {
+            this.view = view;
+            this.params = params;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.step = step;
+            this.out = out;
+            this.smooth = smooth;
+            this.offset = offset;
+            this.stride = stride;
+            columns = (w + step - 1) / step;
+            rows = (h + step - 1) / step;
+            known = new boolean[columns * rows];
+            if (refine) {
+                int coarse = 2 * step - 1;
+                for (int j = 0; j < rows; j++) {
+                    for (int i = 0; i < columns; i++) {
+                        known[j * columns + i] = ((x0 + i * step) & coarse) == 0 && ((y0 + j * step) & coarse) == 0;
+                    }
+                }
+            }
+        }
+
+        void render() {
+            rectangle(0, 0, columns - 1, rows - 1);
+        }
+
+        // Samples i0..i1 by j0..j1, borders included
+        private void rectangle(int i0, int j0, int i1, int j1) {
+            int count = sample(i0, j0);
+            boolean uniform = true;
+            for (int i = i0; i <= i1; i++) {
+                uniform &= sample(i, j0) == count;
+                uniform &= sample(i, j1) == count;
+            }
+            for (int j = j0 + 1; j < j1; j++) {
+                uniform &= sample(i0, j) == count;
+                uniform &= sample(i1, j) == count;
+            }
+            if (i1 - i0 < 2 || j1 - j0 < 2) return;
+            if (uniform) {
+                for (int j = j0 + 1; j < j1; j++) {
+                    for (int i = i0 + 1; i < i1; i++) {
+                        if (known[j * columns + i]) continue;
+                        out[index(i, j)] = count;
+                        // A filled rectangle has one color, as it would without smoothing
+                        if (smooth != null) smooth[index(i, j)] = count;
+                    }
+                }
+                return;
+            }
+            int im = (i0 + i1) >>> 1;
+            int jm = (j0 + j1) >>> 1;
+            rectangle(i0, j0, im, jm);
+            rectangle(im, j0, i1, jm);
+            rectangle(i0, jm, im, j1);
+            rectangle(im, jm, i1, j1);
+        }
+
+        private int sample(int i, int j) {
+            int index = index(i, j);
+            if (!known[j * columns + i]) {
+                double zx = view.toFractalX(x0 + i * step);
+                double zy = view.toFractalY(y0 + j * step);
+                double cx = params.kernel().julia() ? params.juliaCX() : zx;
+                double cy = params.kernel().julia() ? params.juliaCY() : zy;
+                out[index] = smooth == null
+                        ? params.kernel().iterate(zx, zy, cx, cy, params.maxIterations())
+                        : params.kernel().iterate(zx, zy, cx, cy, params.maxIterations(), smooth, index);
+                known[j * columns + i] = true;
+            }
+            return out[index];
+        }
+
+        private int index(int i, int j) {
+            return offset + j * step * stride + i * step;
+        }
+    }
+
+    // Pixels computed by a block and the sum of their counts. Counts filled in by subdivision or
+    // interior shortcuts add as if they had been iterated
+    private static void recordBlock(RenderMetrics metrics, TileRenderedEvent event, long nanos, int x0, int y0,
+                                    int w, int h, int step, boolean refine, int[] out, int offset, int stride) {
+        int coarse = 2 * step - 1;
+        long pixels = 0;
+        long iterations = 0;
+        for (int y = y0; y < y0 + h; y += step) {
+            int row = offset + (y - y0) * stride - x0;
+            boolean skipEven = refine && (y & coarse) == 0;
+            for (int x = x0; x < x0 + w; x += step) {
+                if (skipEven && (x & coarse) == 0) continue;
+                pixels++;
+                iterations += out[row + x];
+            }
+        }
+        if (metrics != null) metrics.tileRendered(nanos, pixels, iterations);
+        if (event.shouldCommit()) {
+            event.x = x0;
+            event.y = y0;
+            event.width = w;
+            event.height = h;
+            event.step = step;
+            event.pixels = pixels;
+            event.iterations = iterations;
+            event.commit();
+        }
+    }
+
+    // A block of pixels being computed by one call to renderRegion
+    private record Region(Viewport view, RenderParams params, BatchKernel batch, RenderMetrics metrics, int x0, int y0, int w, int h,
+                          int step, boolean refine, int[] out, float[] smooth, int offset, int stride,
+                          BooleanSupplier cancelled) {
+    }
+
+    // Splits a range of tile indices in half until a single tile is left, so idle workers steal the
+    // rest. Tasks only live on the pool and are never serialized
+    @SuppressWarnings("serial")
+    private static class TileTask extends RecursiveAction {
+        private final Region region;
+        private final int tilesX;
+        private final int from, to;
+
+        TileTask(Region region, int tilesX, int from, int to) {
+            this.region = region;
+            this.tilesX = tilesX;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            Region r = region;
+            if (r.cancelled().getAsBoolean()) return;
+            if (to - from == 1) {
+                int span = TILE_SIZE * r.step();
+                int tx = (from % tilesX) * span;
+                int ty = (from / tilesX) * span;
+                int w = Math.min(span, r.w() - tx);
+                int h = Math.min(span, r.h() - ty);
+                int offset = r.offset() + ty * r.stride() + tx;
+                TileRenderedEvent event = new TileRenderedEvent();
+                event.begin();
+                long start = System.nanoTime();
+                renderBlock(r.view(), r.params(), r.batch(), r.x0() + tx, r.y0() + ty, w, h,
+                        r.step(), r.refine(), r.out(), r.smooth(), offset, r.stride());
+                if (r.metrics() != null || event.shouldCommit()) {
+                    recordBlock(r.metrics(), event, System.nanoTime() - start, r.x0() + tx, r.y0() + ty, w, h,
+                            r.step(), r.refine(), r.out(), offset, r.stride());
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TileTask(r, tilesX, from, mid), new TileTask(r, tilesX, mid, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.example.fractalgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A complex escape-time formula such as "z^2 + c", parsed into straight-line code over complex
+// registers. z is the current value, c the constant and i the imaginary unit. Operators are
+// + - * / and ^, functions re, im, abs, conj, exp, log, sin and cos. The value is the next z.
+// Integer powers become multiplications, so "z^2 + c" does exactly what MandelbrotKernel does
+public final class Formula {
+
+    enum Op { Z, C, CONST, NEG, ADD, SUB, MUL, DIV, RE, IM, ABS, CONJ, EXP, LOG, SIN, COS }
+
+    // Register k holds the result of step k, computed from registers a and b or the constant re + im*i
+    record Step(Op op, int a, int b, double re, double im) {
+    }
+
+    private final String source;
+    private final List<Step> steps;
+
+    private Formula(String source, List<Step> steps) {
+        this.source = source;
+        this.steps = List.copyOf(steps);
+    }
+
+    public String source() {
+        return source;
+    }
+
+    // The steps in order; the last one holds the next z
+    List<Step> steps() {
+        return steps;
+    }
+
+    // Parse a formula, throwing IllegalArgumentException with the position of the first error
+    public static Formula parse(String source) {
+        Parser parser = new Parser(source);
+        parser.expression();
+        if (parser.peek() != 0) throw parser.error("Unexpected '" + parser.peek() + "'");
+        return new Formula(source, parser.steps);
+    }
+
+    // Recursive descent over expression := term (+|- term)*, term := unary (*|/ unary)*,
+    // unary := -unary | power, power := atom (^ unary)?, atom := number | z | c | i | f(expr) | (expr)
+    private static final class Parser {
+        private static final int MAX_INTEGER_POWER = 64;
+
+        private final String text;
+        private final List<Step> steps = new ArrayList<>();
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        int expression() {
+            int left = term();
+            while (true) {
+                if (accept('+')) left = add(Op.ADD, left, term());
+                else if (accept('-')) left = add(Op.SUB, left, term());
+                else return left;
+            }
+        }
+
+        private int term() {
+            int left = unary();
+            while (true) {
+                if (accept('*')) left = add(Op.MUL, left, unary());
+                else if (accept('/')) left = add(Op.DIV, left, unary());
+                else return left;
+            }
+        }
+
+        private int unary() {
+            if (accept('-')) return add(Op.NEG, unary(), 0);
+            return power();
+        }
+
+        private int power() {
+            int base = atom();
+            if (!accept('^')) return base;
+            // Whole exponents are multiplied out, anything else goes through exp(b*log(a))
+            int mark = pos;
+            boolean negative = accept('-');
+            if (Character.isDigit(peek()) || peek() == '.') {
+                double exponent = number();
+                if (exponent == Math.rint(exponent) && exponent <= MAX_INTEGER_POWER && peek() != '^') {
+                    int n = (int) exponent;
+                    int result = integerPower(base, n);
+                    return negative ? add(Op.DIV, constant(1, 0), result) : result;
+                }
+            }
+            pos = mark;
+            int exponent = unary();
+            return add(Op.EXP, add(Op.MUL, exponent, add(Op.LOG, base, 0)), 0);
+        }
+
+        // Square and multiply
+        private int integerPower(int base, int n) {
+            if (n == 0) return constant(1, 0);
+            int result = -1;
+            int square = base;
+            while (true) {
+                if ((n & 1) != 0) result = result < 0 ? square : add(Op.MUL, result, square);
+                n >>= 1;
+                if (n == 0) return result;
+                square = add(Op.MUL, square, square);
+            }
+        }
+
+        private int atom() {
+            char ch = peek();
+            if (Character.isDigit(ch) || ch == '.') return constant(number(), 0);
+            if (accept('(')) {
+                int inner = expression();
+                expect(')');
+                return inner;
+            }
+            if (!Character.isLetter(ch)) throw error(ch == 0 ? "Unexpected end of formula" : "Unexpected '" + ch + "'");
+            int start = pos;
+            String name = identifier();
+            switch (name) {
+                case "z": return add(Op.Z, 0, 0);
+                case "c": return add(Op.C, 0, 0);
+                case "i": return constant(0, 1);
+            }
+            Op function = switch (name) {
+                case "re" -> Op.RE;
+                case "im" -> Op.IM;
+                case "abs" -> Op.ABS;
+                case "conj" -> Op.CONJ;
+                case "exp" -> Op.EXP;
+                case "log" -> Op.LOG;
+                case "sin" -> Op.SIN;
+                case "cos" -> Op.COS;
+                default -> {
+                    pos = start;
+                    throw error("Unknown name '" + name + "'");
+                }
+            };
+            expect('(');
+            int argument = expression();
+            expect(')');
+            return add(function, argument, 0);
+        }
+
+        private double number() {
+            skipSpaces();
+            int start = pos;
+            while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) pos++;
+            if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                pos++;
+                if (pos < text.length() && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) pos++;
+                while (pos < text.length() && Character.isDigit(text.charAt(pos))) pos++;
+            }
+            try {
+                double value = Double.parseDouble(text.substring(start, pos));
+                if (!Double.isFinite(value)) throw new NumberFormatException();
+                return value;
+            } catch (NumberFormatException ex) {
+                pos = start;
+                throw error("Bad number");
+            }
+        }
+
+        private String identifier() {
+            skipSpaces();
+            int start = pos;
+            while (pos < text.length() && Character.isLetterOrDigit(text.charAt(pos))) pos++;
+            return text.substring(start, pos);
+        }
+
+        private int constant(double re, double im) {
+            steps.add(new Step(Op.CONST, 0, 0, re, im));
+            return steps.size() - 1;
+        }
+
+        private int add(Op op, int a, int b) {
+            steps.add(new Step(op, a, b, 0, 0));
+            return steps.size() - 1;
+        }
+
+        char peek() {
+            skipSpaces();
+            return pos < text.length() ? text.charAt(pos) : 0;
+        }
+
+        private boolean accept(char ch) {
+            if (peek() != ch) return false;
+            pos++;
+            return true;
+        }
+
+        private void expect(char ch) {
+            if (!accept(ch)) throw error("Expected '" + ch + "'");
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (pos + 1) + " of formula: " + text);
+        }
+    }
+}
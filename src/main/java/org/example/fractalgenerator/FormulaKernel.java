@@ -0,0 +1,283 @@
+package org.example.fractalgenerator;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Escape-time kernels for user formulas, z = f(z, c) with c taken from the pixel. A formula is
+// turned into Java source once and compiled in memory to a hidden class, so every pixel runs
+// plain bytecode that the JIT optimizes like the built-in kernels. Runtimes without the system
+// compiler get a slower interpreter of the same steps, with identical counts
+public final class FormulaKernel {
+    private static final String PACKAGE = FormulaKernel.class.getPackageName();
+
+    // Only what the generated class refers to, so javac does not need this module's classes
+    private static final String KERNEL_STUB = """
+            package %s;
+            public interface FractalKernel {
+                int iterate(double zx, double zy, double cx, double cy, int maxIterations);
+                boolean julia();
+                String name();
+                String identity();
+            }
+            """.formatted(PACKAGE);
+
+    private FormulaKernel() {
+    }
+
+    public static boolean isCompilerAvailable() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    // Parse and compile a formula. Throws IllegalArgumentException if it does not parse
+    public static FractalKernel create(String name, String formula) {
+        Formula parsed = Formula.parse(formula);
+        return isCompilerAvailable() ? compile(name, parsed) : new Interpreted(name, parsed);
+    }
+
+    // Same as create, but always interpreted
+    public static FractalKernel interpret(String name, String formula) {
+        return new Interpreted(name, Formula.parse(formula));
+    }
+
+    private static FractalKernel compile(String name, Formula formula) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        StringWriter errors = new StringWriter();
+        List<JavaFileObject> sources = List.of(
+                source("CompiledFormula", javaSource(formula)), source("FractalKernel", KERNEL_STUB));
+        // The standard file manager holds open files and caches until it is closed
+        try (StandardJavaFileManager standard = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            JavaFileManager files = new ForwardingJavaFileManager<>(standard) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                           JavaFileObject.Kind kind, FileObject sibling) {
+                    return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            ByteArrayOutputStream out = new ByteArrayOutputStream();
+                            classes.put(className, out);
+                            return out;
+                        }
+                    };
+                }
+            };
+            boolean compiled = compiler.getTask(errors, files, null, List.of("-proc:none", "-g:none"), null, sources).call();
+            if (!compiled) {
+                throw new IllegalStateException("Could not compile formula " + formula.source() + ": " + errors);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not compile formula " + formula.source(), ex);
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClass(classes.get(PACKAGE + ".CompiledFormula").toByteArray(), true);
+            return (FractalKernel) lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, String.class)).invoke(name);
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Could not load compiled formula " + formula.source(), ex);
+        }
+    }
+
+    private static JavaFileObject source(String className, String code) {
+        URI uri = URI.create("string:///" + PACKAGE.replace('.', '/') + "/" + className + ".java");
+        return new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    // The loop of MandelbrotKernel with the formula's steps as its body, one pair of locals per step
+    static String javaSource(Formula formula) {
+        StringBuilder body = new StringBuilder();
+        List<Formula.Step> steps = formula.steps();
+        for (int k = 0; k < steps.size(); k++) {
+            Formula.Step s = steps.get(k);
+            String ra = "r" + s.a(), ia = "i" + s.a(), rb = "r" + s.b(), ib = "i" + s.b();
+            String re, im;
+            switch (s.op()) {
+                case Z -> { re = "zx"; im = "zy"; }
+                case C -> { re = "cx"; im = "cy"; }
+                case CONST -> { re = Double.toString(s.re()); im = Double.toString(s.im()); }
+                case NEG -> { re = "-" + ra; im = "-" + ia; }
+                case ADD -> { re = ra + " + " + rb; im = ia + " + " + ib; }
+                case SUB -> { re = ra + " - " + rb; im = ia + " - " + ib; }
+                case MUL -> { re = ra + "*" + rb + " - " + ia + "*" + ib; im = ra + "*" + ib + " + " + ia + "*" + rb; }
+                case DIV -> {
+                    body.append("            double d").append(k).append(" = ")
+                            .append(rb).append("*").append(rb).append(" + ").append(ib).append("*").append(ib).append(";\n");
+                    re = "(" + ra + "*" + rb + " + " + ia + "*" + ib + ") / d" + k;
+                    im = "(" + ia + "*" + rb + " - " + ra + "*" + ib + ") / d" + k;
+                }
+                case RE -> { re = ra; im = "0.0"; }
+                case IM -> { re = ia; im = "0.0"; }
+                case ABS -> { re = "Math.sqrt(" + ra + "*" + ra + " + " + ia + "*" + ia + ")"; im = "0.0"; }
+                case CONJ -> { re = ra; im = "-" + ia; }
+                case EXP -> {
+                    body.append("            double e").append(k).append(" = Math.exp(").append(ra).append(");\n");
+                    re = "e" + k + "*Math.cos(" + ia + ")";
+                    im = "e" + k + "*Math.sin(" + ia + ")";
+                }
+                case LOG -> { re = "0.5*Math.log(" + ra + "*" + ra + " + " + ia + "*" + ia + ")"; im = "Math.atan2(" + ia + ", " + ra + ")"; }
+                case SIN -> {
+                    re = "Math.sin(" + ra + ")*Math.cosh(" + ia + ")";
+                    im = "Math.cos(" + ra + ")*Math.sinh(" + ia + ")";
+                }
+                case COS -> {
+                    re = "Math.cos(" + ra + ")*Math.cosh(" + ia + ")";
+                    im = "-Math.sin(" + ra + ")*Math.sinh(" + ia + ")";
+                }
+                default -> throw new IllegalStateException(s.op().toString());
+            }
+            body.append("            double r").append(k).append(" = ").append(re).append(";\n");
+            body.append("            double i").append(k).append(" = ").append(im).append(";\n");
+        }
+        int last = steps.size() - 1;
+        return """
+                package %s;
+                final class CompiledFormula implements FractalKernel {
+                    private final String name;
+                    CompiledFormula(String name) {
+                        this.name = name;
+                    }
+                    public int iterate(double zx, double zy, double cx, double cy, int maxIterations) {
+                        int iter = maxIterations;
+                        while (zx*zx + zy*zy < 4 && iter > 0) {
+                %s            zx = r%d;
+                            zy = i%d;
+                            iter--;
+                        }
+                        return maxIterations - iter;
+                    }
+                    public boolean julia() {
+                        return false;
+                    }
+                    public String name() {
+                        return name;
+                    }
+                    public String identity() {
+                        return name + " = " + %s;
+                    }
+                }
+                """.formatted(PACKAGE, body, last, last, literal(formula.source()));
+    }
+
+    // Java string literal of s. Control characters, such as the line breaks a formula may contain,
+    // become octal escapes; unicode escapes would be turned back into line breaks before parsing
+    private static String literal(String s) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' || c == '"') literal.append('\\').append(c);
+            else if (c < ' ' || c == 0x7f) literal.append(String.format("\\%03o", (int) c));
+            else literal.append(c);
+        }
+        return literal.append('"').toString();
+    }
+
+    // Runs the steps one by one over arrays of registers
+    private static final class Interpreted implements FractalKernel {
+        private final String name;
+        private final String source;
+        private final Formula.Step[] steps;
+        // Real and imaginary registers of each render thread, so pixels allocate nothing
+        private final ThreadLocal<double[][]> registers;
+
+        Interpreted(String name, Formula formula) {
+            this.name = name;
+            source = formula.source();
+            steps = formula.steps().toArray(new Formula.Step[0]);
+            registers = ThreadLocal.withInitial(() -> new double[2][steps.length]);
+        }
+
+        @Override
+        public int iterate(double zx, double zy, double cx, double cy, int maxIterations) {
+            double[][] registers = this.registers.get();
+            double[] re = registers[0];
+            double[] im = registers[1];
+            int last = steps.length - 1;
+            int iter = maxIterations;
+            while (zx*zx + zy*zy < 4 && iter > 0) {
+                for (int k = 0; k < steps.length; k++) {
+                    Formula.Step s = steps[k];
+                    int a = s.a(), b = s.b();
+                    switch (s.op()) {
+                        case Z -> { re[k] = zx; im[k] = zy; }
+                        case C -> { re[k] = cx; im[k] = cy; }
+                        case CONST -> { re[k] = s.re(); im[k] = s.im(); }
+                        case NEG -> { re[k] = -re[a]; im[k] = -im[a]; }
+                        case ADD -> { re[k] = re[a] + re[b]; im[k] = im[a] + im[b]; }
+                        case SUB -> { re[k] = re[a] - re[b]; im[k] = im[a] - im[b]; }
+                        case MUL -> {
+                            re[k] = re[a]*re[b] - im[a]*im[b];
+                            im[k] = re[a]*im[b] + im[a]*re[b];
+                        }
+                        case DIV -> {
+                            double d = re[b]*re[b] + im[b]*im[b];
+                            re[k] = (re[a]*re[b] + im[a]*im[b]) / d;
+                            im[k] = (im[a]*re[b] - re[a]*im[b]) / d;
+                        }
+                        case RE -> { re[k] = re[a]; im[k] = 0.0; }
+                        case IM -> { re[k] = im[a]; im[k] = 0.0; }
+                        case ABS -> { re[k] = Math.sqrt(re[a]*re[a] + im[a]*im[a]); im[k] = 0.0; }
+                        case CONJ -> { re[k] = re[a]; im[k] = -im[a]; }
+                        case EXP -> {
+                            double e = Math.exp(re[a]);
+                            re[k] = e*Math.cos(im[a]);
+                            im[k] = e*Math.sin(im[a]);
+                        }
+                        case LOG -> {
+                            re[k] = 0.5*Math.log(re[a]*re[a] + im[a]*im[a]);
+                            im[k] = Math.atan2(im[a], re[a]);
+                        }
+                        case SIN -> {
+                            re[k] = Math.sin(re[a])*Math.cosh(im[a]);
+                            im[k] = Math.cos(re[a])*Math.sinh(im[a]);
+                        }
+                        case COS -> {
+                            re[k] = Math.cos(re[a])*Math.cosh(im[a]);
+                            im[k] = -Math.sin(re[a])*Math.sinh(im[a]);
+                        }
+                    }
+                }
+                zx = re[last];
+                zy = im[last];
+                iter--;
+            }
+            return maxIterations - iter;
+        }
+
+        @Override
+        public boolean julia() {
+            return false;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String identity() {
+            return name + " = " + source;
+        }
+    }
+}
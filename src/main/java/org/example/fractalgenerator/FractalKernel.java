@@ -0,0 +1,38 @@
+package org.example.fractalgenerator;
+
+// Escape-time iteration of a single point, shared by all escape-time fractals
+public interface FractalKernel {
+
+    // Iterate z from (zx, zy) with constant (cx, cy) and return the number of iterations
+    // performed before |z| reached 2, or maxIterations if it never did
+    int iterate(double zx, double zy, double cx, double cy, int maxIterations);
+
+    // Same as iterate, also storing the point's fractional escape value in smooth[index]: the
+    // normalized iteration count with log-log smoothing, which runs on continuously where the
+    // count jumps. Kernels that cannot work it out store the count itself
+    default int iterate(double zx, double zy, double cx, double cy, int maxIterations, float[] smooth, int index) {
+        int count = iterate(zx, zy, cx, cy, maxIterations);
+        smooth[index] = count;
+        return count;
+    }
+
+    // True if c is the user supplied Julia constant, false if c is the pixel itself
+    boolean julia();
+
+    // True if a rectangle whose border pixels all have the same count may be filled with that
+    // count without iterating its inside (Mariani-Silver subdivision). Only safe for connected sets
+    default boolean subdivide() {
+        return false;
+    }
+
+    // Name the fractal is listed under in the fractal type menu
+    default String name() {
+        return getClass().getSimpleName();
+    }
+
+    // What the kernel computes, for caches that outlive it such as FrameStore: kernels that give
+    // the same counts share it, and any change to the counts must change it
+    default String identity() {
+        return name();
+    }
+}
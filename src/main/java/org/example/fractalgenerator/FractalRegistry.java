@@ -0,0 +1,118 @@
+package org.example.fractalgenerator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+// Escape-time fractal types by name, in menu order: kernels provided as FractalKernel services
+// (the built-in Mandelbrot and Julia sets, or any other module on the module path), then the
+// bundled formulas, then formulas added while running. Formulas are only parsed when they are
+// added and compiled the first time their kernel is asked for, which may be on any thread
+public class FractalRegistry {
+    // Every name in menu order, mapped to its formula, or to null for kernels registered as they are
+    private final Map<String, String> formulas = new LinkedHashMap<>();
+    // Kernels registered or compiled so far
+    private final Map<String, FractalKernel> kernels = new HashMap<>();
+
+    // A registry of the service kernels and the formulas in formulas/builtin.formulas
+    public static FractalRegistry load() throws IOException {
+        FractalRegistry registry = new FractalRegistry();
+        for (FractalKernel kernel : ServiceLoader.load(FractalKernel.class)) {
+            registry.register(kernel);
+        }
+        registry.loadFormulas("formulas/builtin.formulas");
+        return registry;
+    }
+
+    // Add a kernel under its own name, replacing one of the same name
+    public synchronized void register(FractalKernel kernel) {
+        formulas.put(kernel.name(), null);
+        kernels.put(kernel.name(), kernel);
+    }
+
+    // Register a formula, compiled when its kernel is first asked for. Throws
+    // IllegalArgumentException if it does not parse
+    public synchronized void addFormula(String name, String formula) {
+        Formula.parse(formula);
+        formulas.put(name, formula);
+        kernels.remove(name);
+    }
+
+    public synchronized boolean contains(String name) {
+        return formulas.containsKey(name);
+    }
+
+    // True if get returns at once, without compiling a formula
+    public synchronized boolean isReady(String name) {
+        return kernels.containsKey(name) || !formulas.containsKey(name);
+    }
+
+    // True if the kernel takes its Julia constant from the caller. Formulas never do, so this
+    // does not compile them
+    public synchronized boolean isJulia(String name) {
+        FractalKernel kernel = kernels.get(name);
+        return kernel != null && kernel.julia();
+    }
+
+    // The kernel of that name, or null. A formula not used before is compiled first, which takes
+    // a moment, so ask from a background thread unless isReady
+    public FractalKernel get(String name) {
+        String formula;
+        synchronized (this) {
+            FractalKernel kernel = kernels.get(name);
+            if (kernel != null || !formulas.containsKey(name)) return kernel;
+            formula = formulas.get(name);
+        }
+        // Compiled without the lock, so other kernels can be looked up meanwhile
+        FractalKernel kernel = FormulaKernel.create(name, formula);
+        synchronized (this) {
+            // Unless the formula was replaced while it compiled
+            if (formula.equals(formulas.get(name))) kernels.putIfAbsent(name, kernel);
+            return kernels.getOrDefault(name, kernel);
+        }
+    }
+
+    // The kernel whose name matches ignoring case and spaces, as typed on a command line, or null.
+    // Only that kernel is compiled
+    public FractalKernel find(String name) {
+        String key = name.replace(" ", "");
+        for (String candidate : names()) {
+            if (candidate.replace(" ", "").equalsIgnoreCase(key)) return get(candidate);
+        }
+        return null;
+    }
+
+    public synchronized Set<String> names() {
+        return new LinkedHashSet<>(formulas.keySet());
+    }
+
+    // Register every "Name = formula" line of a resource; blank lines and # comments are skipped
+    private void loadFormulas(String resource) throws IOException {
+        try (InputStream in = FractalRegistry.class.getResourceAsStream(resource)) {
+            if (in == null) throw new IOException("Missing formula resource " + resource);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                int equals = line.indexOf('=');
+                try {
+                    if (equals < 0) throw new IllegalArgumentException("Expected Name = formula");
+                    addFormula(line.substring(0, equals).strip(), line.substring(equals + 1).strip());
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException("Bad formula on line " + lineNumber + " of " + resource + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+}
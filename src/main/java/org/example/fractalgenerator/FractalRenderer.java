@@ -1,16 +1,22 @@
 package org.example.fractalgenerator;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.concurrent.Task;
+import javafx.beans.InvalidationListener;
 import javafx.beans.binding.Bindings;
 import javafx.geometry.Insets;
 import javafx.scene.Parent;  // Add this at the top with other imports
 import javafx.geometry.Pos;
 import javafx.scene.Cursor;
 import javafx.scene.Scene;
-import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.*;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.input.*;
 import javafx.scene.layout.*;
@@ -18,41 +24,146 @@ import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import javax.imageio.ImageIO;
+import javafx.util.Duration;
+
+import javax.management.JMException;
 import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
 
 // JavaFX application to render fractals
 public class FractalRenderer extends Application {
+    // Canvas size at the start; the canvas then follows the window at the same 3:2 shape
     private static final int WIDTH = 1200;
     private static final int HEIGHT = 800;
+    // Frame sizes whose buffers are kept, enough to go back and forth between two
+    private static final int POOLED_SIZES = 2;
     private static final double MIN_ZOOM = 1e-3;
     private static final double MAX_ZOOM = 1e3;
+    // Each scroll step zooms by this factor, so zoom levels repeat exactly and cached tiles are reused
+    private static final double ZOOM_STEP = 1.1;
+    private static final int MIN_ZOOM_LEVEL = (int) Math.ceil(Math.log(MIN_ZOOM) / Math.log(ZOOM_STEP));
+    private static final int MAX_ZOOM_LEVEL = (int) Math.floor(Math.log(MAX_ZOOM) / Math.log(ZOOM_STEP));
+    // The Mandelbrot set can zoom much further with perturbation, up to where the pixel spacing
+    // nears the smallest double
+    private static final double MAX_DEEP_ZOOM = 1e280;
+    private static final int MAX_DEEP_ZOOM_LEVEL = (int) Math.floor(Math.log(MAX_DEEP_ZOOM) / Math.log(ZOOM_STEP));
+    private static final FractalKernel MANDELBROT = new MandelbrotKernel();
+    private static final FractalKernel JULIA = new JuliaKernel();
+    private static final Palette MONOCHROME = new MonochromePalette();
+    // Julia previews: one of this size, or a grid of half-size thumbnails for constants this many
+    // view pixels apart, at no more than this many iterations
+    private static final int PREVIEW_WIDTH = 240;
+    private static final int PREVIEW_HEIGHT = 160;
+    private static final int PREVIEW_GRID = 3;
+    private static final int PREVIEW_SPACING = 30;
+    private static final int MAX_PREVIEW_ITERATIONS = 500;
 
     // Fractal rendering variables
     private double zoomFactor = 1.0;
+    private int zoomLevel = 0;
     private double offsetX = 0;
     private double offsetY = 0;
+    // Exact point the offsets are measured from. Stays zero until deep zoom, where it follows the
+    // view center on every zoom step so the offsets keep all their precision
+    private BigDecimal referenceX = BigDecimal.ZERO;
+    private BigDecimal referenceY = BigDecimal.ZERO;
+    // Deep zoom kernel of the current reference point
+    private PerturbationKernel deepKernel;
     // Position of the mouse when dragging
     private double startDragX, startDragY;
     private double prevOffsetX, prevOffsetY;
     private Color customColor = Color.BLACK;
-    // Image for Mandelbrot/Julia sets
-    private WritableImage fractalImage;
+    // Plain or accelerated, depending on the interior toggles
+    private FractalKernel mandelbrotKernel = MANDELBROT;
+    // Size of the rendered frames in pixels, the canvas size times the screen's output scale
+    private int frameWidth = WIDTH;
+    private int frameHeight = HEIGHT;
+    private double outputScale = 1;
+    // Last frame drawn and its pass step, stretched over the canvas while the window is resized
+    private WritableImage shownImage;
+    private int shownStep;
+    private Stage stage;
+    // Rasterizer, pixels and image of the geometric fractals at one frame size
+    private record GeometryFrame(GeometryRasterizer rasterizer, int[] pixels, WritableImage image) {
+        GeometryFrame(int width, int height) {
+            this(new GeometryRasterizer(width, height), new int[width * height], new WritableImage(width, height));
+        }
+    }
+    private final BufferPool<GeometryFrame> geometryFrames = new BufferPool<>(POOLED_SIZES, GeometryFrame::new);
     private Text statusText = new Text();
     private ColorPicker backgroundPicker = new ColorPicker(Color.WHITE);
     private ColorPicker insideColorPicker = new ColorPicker(Color.BLACK);
+    // Picks the iteration count of escape-time fractals from the zoom and the last frame
+    private ToggleButton autoIterationsToggle = new ToggleButton("Auto");
+    private final IterationBudget iterationBudget = new IterationBudget();
+    // Blend colors by the fractional escape count, and spread the counts evenly over the palette
+    private ToggleButton smoothToggle = new ToggleButton("Smooth");
+    private ToggleButton equalizeToggle = new ToggleButton("Equalize");
+    // Iteration count of the escape-time fractal drawn last
+    private int escapeIterations;
+    // Multi-core escape-time engine for Mandelbrot/Julia sets
+    private final EscapeTimeEngine engine = new EscapeTimeEngine();
+    // Finished tiles of recently visited views
+    private final TileCache tileCache = TileCache.fromSystemProperties();
+    // Computed frames kept on disk across sessions, or null if disabled
+    private final FrameStore frameStore = FrameStore.fromSystemProperties();
+    // The view shown last, saved on exit and shown again on the next start
+    private static final Path SESSION_FILE = Path.of(System.getProperty("user.home"), ".fractalgenerator",
+            "session.properties");
+    private Session session;
+    // Frame and tile timings for the metrics overlay, JMX and JFR
+    private final RenderMetrics metrics = new RenderMetrics();
+    // Background progressive renderer so panning and zooming never block the FX thread
+    private final RenderPipeline pipeline = new RenderPipeline(engine, tileCache, metrics,
+            ex -> showAlert("Error", ex.getMessage()));
+    // Color schemes by name, apart from Custom which depends on the color picker
+    private final Map<String, Palette> palettes = new LinkedHashMap<>();
+    private final PaletteCache paletteCache = new PaletteCache();
+    // Escape-time fractal types: Mandelbrot, Julia, the bundled formulas and the user's own
+    private FractalRegistry fractals;
+    // Formula being compiled in the background, or null
+    private String compilingFormula;
+    // Views recorded for an animation, two seconds apart, see AnimationRenderer
+    private final List<Keyframe> keyframes = new ArrayList<>();
+    // Julia previews of the constants around the cursor while exploring the Mandelbrot set
+    private final JuliaPreviewer juliaPreviewer = new JuliaPreviewer();
+    private ToggleButton explorerToggle = new ToggleButton("Julia Explorer");
+    private ToggleButton previewGridToggle = new ToggleButton("Grid");
+    // Renders the fractal last drawn at any resolution, for saving
+    private ExportSource exportSource;
+
+    // Creates the bands of the current fractal for an image of the given size
+    private interface ExportSource {
+        BandSource create(int width, int height);
+    }
 
     // Launch the JavaFX application
     @Override
     public void start(Stage primaryStage) {
+        stage = primaryStage;
         ChoiceBox<String> fractalTypeChoice = new ChoiceBox<>();
-        fractalTypeChoice.getItems().addAll("Sierpinski Triangle", "Mandelbrot Set", "Julia Set", "Koch Snowflake");
+        loadFractals();
+        fractalTypeChoice.getItems().add("Sierpinski Triangle");
+        fractalTypeChoice.getItems().addAll(fractals.names());
+        fractalTypeChoice.getItems().add("Koch Snowflake");
         fractalTypeChoice.setValue("Sierpinski Triangle");
 
         // Create text fields and choice box
         TextField depthField = new TextField("6");
         ChoiceBox<String> colorSchemeChoice = new ChoiceBox<>();
+        loadPalettes();
         colorSchemeChoice.getItems().addAll("Monochrome", "Rainbow", "Custom");
+        palettes.keySet().stream().filter(name -> !colorSchemeChoice.getItems().contains(name))
+                .forEach(colorSchemeChoice.getItems()::add);
         colorSchemeChoice.setValue("Monochrome");
 
         // Create color pickers and text fields
@@ -60,13 +171,31 @@ public class FractalRenderer extends Application {
         TextField juliaCXField = new TextField("-0.7");
         TextField juliaCYField = new TextField("0.27015");
 
+        // Pick up where the last session left off
+        Session saved = Session.load(SESSION_FILE);
+        if (saved != null) restoreSession(saved, fractalTypeChoice, depthField, colorSchemeChoice, juliaCXField, juliaCYField);
+
         // Create buttons
         Button drawButton = new Button("Draw Fractal");
         Button saveButton = new Button("Save Image");
+        Button addKeyframeButton = new Button("Add Keyframe");
+        Button saveKeyframesButton = new Button("Save Keyframes...");
         Button resetButton = new Button("Reset View");
         Button mandelbrotPreset = new Button("Mandelbrot Preset");
         Button juliaPreset = new Button("Julia Preset");
+        Button loadPaletteButton = new Button("Load Palette...");
+        Button addFormulaButton = new Button("Add Formula...");
         ToggleButton themeToggle = new ToggleButton("Dark Mode");
+        ToggleButton simdToggle = new ToggleButton("SIMD Kernel");
+        simdToggle.setSelected(engine.isVectorized());
+        simdToggle.setDisable(!EscapeTimeEngine.isVectorAvailable());
+        ToggleButton fastInteriorToggle = new ToggleButton("Fast Interior");
+        ToggleButton subdivideToggle = new ToggleButton("Subdivide");
+        ToggleButton metricsToggle = new ToggleButton("Metrics");
+        ChoiceBox<String> frameBudgetChoice = new ChoiceBox<>();
+        frameBudgetChoice.getItems().addAll("Off", "16 ms", "33 ms", "100 ms", "250 ms");
+        frameBudgetChoice.setValue("Off");
+        subdivideToggle.disableProperty().bind(fastInteriorToggle.selectedProperty().not());
 
         // Create input grid
         GridPane inputGrid = new GridPane();
@@ -74,37 +203,67 @@ public class FractalRenderer extends Application {
         inputGrid.setVgap(8);
         inputGrid.setHgap(8);
         // Align the grid in the center
-        inputGrid.addRow(0, new Label("Fractal Type:"), fractalTypeChoice);
-        inputGrid.addRow(1, new Label("Depth/Iterations:"), depthField);
-        inputGrid.addRow(2, new Label("Color Scheme:"), colorSchemeChoice);
+        inputGrid.addRow(0, new Label("Fractal Type:"), fractalTypeChoice, addFormulaButton);
+        inputGrid.addRow(1, new Label("Depth/Iterations:"), depthField, autoIterationsToggle,
+                new Label("Frame Budget:"), frameBudgetChoice);
+        inputGrid.addRow(2, new Label("Color Scheme:"), colorSchemeChoice, loadPaletteButton,
+                new HBox(8, smoothToggle, equalizeToggle));
         inputGrid.addRow(3, new Label("Background Color:"), backgroundPicker);
         inputGrid.addRow(4, new Label("Inside Color:"), insideColorPicker);
         inputGrid.addRow(5, new Label("Custom Color:"), colorPicker);
         inputGrid.addRow(6, new Label("Julia cX:"), juliaCXField);
-        inputGrid.addRow(7, new Label("Julia cY:"), juliaCYField);
+        inputGrid.addRow(7, new Label("Julia cY:"), juliaCYField, explorerToggle, previewGridToggle);
         // Align the buttons in the center
         inputGrid.add(drawButton, 0, 8, 2, 1);
         inputGrid.add(resetButton, 0, 9, 2, 1);
-        inputGrid.add(saveButton, 0, 10, 2, 1);
+        inputGrid.add(new HBox(8, saveButton, addKeyframeButton, saveKeyframesButton), 0, 10, 2, 1);
         inputGrid.add(mandelbrotPreset, 0, 11, 2, 1);
         inputGrid.add(juliaPreset, 0, 12, 2, 1);
         inputGrid.add(themeToggle, 0, 13, 2, 1);
+        inputGrid.add(new HBox(8, simdToggle, fastInteriorToggle, subdivideToggle, metricsToggle), 0, 14, 2, 1);
 
         // Create canvas and layout
         Canvas canvas = new Canvas(WIDTH, HEIGHT);
         GraphicsContext gc = canvas.getGraphicsContext2D();
+        // Coarse preview passes are scaled up as solid blocks
+        gc.setImageSmoothing(false);
         HBox statusBar = new HBox(statusText);
         statusBar.setPadding(new Insets(5));
-        VBox layout = new VBox(10, inputGrid, canvas, statusBar);
+        // Render metrics drawn over the top left corner of the canvas
+        Label metricsOverlay = new Label();
+        metricsOverlay.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-text-fill: white; "
+                + "-fx-font-family: monospace; -fx-padding: 6;");
+        metricsOverlay.setMouseTransparent(true);
+        metricsOverlay.visibleProperty().bind(metricsToggle.selectedProperty());
+        // Julia previews over the bottom right corner; a click picks the previewed constant
+        GridPane previewGrid = new GridPane();
+        previewGrid.setHgap(2);
+        previewGrid.setVgap(2);
+        previewGrid.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-padding: 2;");
+        previewGrid.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        previewGrid.visibleProperty().bind(explorerToggle.selectedProperty());
+        StackPane canvasPane = new StackPane(canvas, metricsOverlay, previewGrid);
+        StackPane.setAlignment(metricsOverlay, Pos.TOP_LEFT);
+        StackPane.setAlignment(previewGrid, Pos.BOTTOM_RIGHT);
+        canvasPane.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        // Takes the space the controls leave, with the canvas centered in it
+        StackPane viewPane = new StackPane(canvasPane);
+        viewPane.setMinSize(0, 0);
+        VBox.setVgrow(viewPane, Priority.ALWAYS);
+        VBox layout = new VBox(10, inputGrid, viewPane, statusBar);
         Scene scene = new Scene(layout, WIDTH, HEIGHT + 250);
+        if (saved != null && saved.windowWidth() > 0 && saved.windowHeight() > 0) {
+            primaryStage.setWidth(saved.windowWidth());
+            primaryStage.setHeight(saved.windowHeight());
+        }
 
         // Disable custom color picker for non-custom color schemes
         colorPicker.disableProperty().bind(Bindings.createBooleanBinding(() ->
                 !"Custom".equals(colorSchemeChoice.getValue()), colorSchemeChoice.valueProperty()));
 
-        // Disable Julia set fields for non-Julia sets
+        // Disable Julia set fields for fractals that take c from the pixel
         juliaCXField.disableProperty().bind(Bindings.createBooleanBinding(() ->
-                !"Julia Set".equals(fractalTypeChoice.getValue()), fractalTypeChoice.valueProperty()));
+                !fractals.isJulia(fractalTypeChoice.getValue()), fractalTypeChoice.valueProperty()));
         juliaCYField.disableProperty().bind(juliaCXField.disableProperty());
 
         // Disable background color picker for Mandelbrot/Julia sets
@@ -113,10 +272,9 @@ public class FractalRenderer extends Application {
                                 fractalTypeChoice.getValue().equals("Koch Snowflake")),
                 fractalTypeChoice.valueProperty()));
 
-        // Disable inside color picker for non-Mandelbrot/Julia sets
+        // Disable inside color picker for the geometric fractals
         insideColorPicker.disableProperty().bind(Bindings.createBooleanBinding(() ->
-                        !(fractalTypeChoice.getValue().equals("Mandelbrot Set") ||
-                                fractalTypeChoice.getValue().equals("Julia Set")),
+                        !fractals.contains(fractalTypeChoice.getValue()),
                 fractalTypeChoice.valueProperty()));
 
         // Event handlers for buttons
@@ -128,13 +286,31 @@ public class FractalRenderer extends Application {
                 colorSchemeChoice, colorPicker, juliaCXField, juliaCYField));
 
         // Save the image to a file
-        saveButton.setOnAction(e -> saveImage(canvas, primaryStage));
+        saveButton.setOnAction(e -> saveImage(primaryStage));
+
+        // Record the current view for an animation, and write the recorded views to a keyframe file
+        addKeyframeButton.setOnAction(e -> addKeyframe(juliaCXField, juliaCYField));
+        saveKeyframesButton.setOnAction(e -> saveKeyframes(primaryStage));
+
+        // Load a gradient palette file and select it
+        loadPaletteButton.setOnAction(e -> loadPaletteFile(primaryStage, colorSchemeChoice));
+
+        // Compile a formula typed by the user, select it and draw it
+        addFormulaButton.setOnAction(e -> {
+            if (addFormula(fractalTypeChoice)) {
+                redrawFractal(gc, fractalTypeChoice, depthField, colorSchemeChoice,
+                        colorPicker, juliaCXField, juliaCYField);
+            }
+        });
 
         // Set Mandelbrot set preset values
         mandelbrotPreset.setOnAction(e -> {
             zoomFactor = 1.0;
+            zoomLevel = 0;
             offsetX = 0;
             offsetY = 0;
+            referenceX = BigDecimal.ZERO;
+            referenceY = BigDecimal.ZERO;
 
             // Set default values for Mandelbrot set
             redrawFractal(gc, fractalTypeChoice, depthField, colorSchemeChoice,
@@ -155,9 +331,98 @@ public class FractalRenderer extends Application {
             else applyLightTheme(layout, inputGrid, statusBar);
         });
 
-        // Drag to pan the fractal
+        // Switch the Mandelbrot/Julia kernel; both give the same image, so nothing is redrawn
+        simdToggle.selectedProperty().addListener((obs, oldVal, newVal) -> engine.setVectorized(newVal));
+
+        // Shortcuts for points inside the Mandelbrot set. Fast Interior keeps the image exactly the
+        // same, Subdivide also fills rectangles of one count and can lose sub-pixel details
+        InvalidationListener interiorMode = obs -> {
+            mandelbrotKernel = fastInteriorToggle.isSelected()
+                    ? new AcceleratedMandelbrotKernel(subdivideToggle.isSelected())
+                    : MANDELBROT;
+            if ("Mandelbrot Set".equals(fractalTypeChoice.getValue())) {
+                redrawFractal(gc, fractalTypeChoice, depthField, colorSchemeChoice, colorPicker,
+                        juliaCXField, juliaCYField);
+            }
+        };
+        fastInteriorToggle.selectedProperty().addListener(interiorMode);
+        subdivideToggle.selectedProperty().addListener(interiorMode);
+
+        // Iteration count from the zoom and the last frame instead of the depth field. Frames are
+        // only shown to the budget while it picks the count
+        pipeline.setIterationBudget(autoIterationsToggle.isSelected() ? iterationBudget : null);
+        pipeline.setFrameStore(frameStore);
+        autoIterationsToggle.selectedProperty().addListener((obs, oldVal, newVal) -> {
+            pipeline.setIterationBudget(newVal ? iterationBudget : null);
+            redrawFractal(gc, fractalTypeChoice, depthField, colorSchemeChoice, colorPicker,
+                    juliaCXField, juliaCYField);
+        });
+
+        // Smooth coloring needs the fractional counts computed; equalizing only recolors
+        InvalidationListener coloringMode = obs -> redrawFractal(gc, fractalTypeChoice, depthField,
+                colorSchemeChoice, colorPicker, juliaCXField, juliaCYField);
+        smoothToggle.selectedProperty().addListener(coloringMode);
+        equalizeToggle.selectedProperty().addListener(coloringMode);
+
+        // Frames that would take longer than the budget are drawn shallower first and deepened after
+        frameBudgetChoice.valueProperty().addListener((obs, oldVal, newVal) ->
+                pipeline.setFrameBudget(newVal.equals("Off") ? 0 : Long.parseLong(newVal.replace(" ms", ""))));
+
+        // Refresh the metrics overlay twice a second while it is shown
+        Timeline metricsRefresh = new Timeline(new KeyFrame(Duration.millis(500),
+                e -> metricsOverlay.setText(metrics.summary())));
+        metricsRefresh.setCycleCount(Timeline.INDEFINITE);
+        metricsToggle.selectedProperty().addListener((obs, oldVal, newVal) -> {
+            metricsOverlay.setText(metrics.summary());
+            if (newVal) metricsRefresh.play();
+            else metricsRefresh.stop();
+        });
+
+        // Previews follow the cursor over the Mandelbrot set; switching the explorer or the grid
+        // off drops the previews not yet shown. Picking a constant shows its Julia set
+        BiConsumer<Double, Double> pickJulia = (cX, cY) -> {
+            juliaCXField.setText(formatConstant(cX));
+            juliaCYField.setText(formatConstant(cY));
+            fractalTypeChoice.setValue("Julia Set");
+            redrawFractal(gc, fractalTypeChoice, depthField, colorSchemeChoice, colorPicker,
+                    juliaCXField, juliaCYField);
+        };
+        previewGridToggle.disableProperty().bind(explorerToggle.selectedProperty().not());
+        InvalidationListener explorerMode = obs -> {
+            juliaPreviewer.cancel();
+            previewGrid.getChildren().clear();
+        };
+        explorerToggle.selectedProperty().addListener(explorerMode);
+        previewGridToggle.selectedProperty().addListener(explorerMode);
+
+        // The canvas fills the view pane at the view's 3:2 shape, and frames have one pixel per
+        // screen pixel at the output scale. While the window is being resized the last frame is
+        // stretched over the canvas; the frame size follows once resizing pauses
+        PauseTransition resizeSettled = new PauseTransition(Duration.millis(150));
+        resizeSettled.setOnFinished(e -> {
+            if (resizeFrame(canvas)) {
+                redrawFractal(gc, fractalTypeChoice, depthField, colorSchemeChoice, colorPicker,
+                        juliaCXField, juliaCYField);
+            }
+        });
+        InvalidationListener resize = obs -> {
+            double unit = Math.max(Math.floor(Math.min(viewPane.getWidth() / 3, viewPane.getHeight() / 2)), 50);
+            canvas.setWidth(3 * unit);
+            canvas.setHeight(2 * unit);
+            if (shownImage != null) drawFrame(gc, shownImage, shownStep);
+            resizeSettled.playFromStart();
+        };
+        viewPane.widthProperty().addListener(resize);
+        viewPane.heightProperty().addListener(resize);
+        primaryStage.outputScaleXProperty().addListener(resize);
+
+        // Drag to pan the fractal, or right-click while exploring to show the Julia set of the cursor
         canvas.setOnMousePressed(e -> {
-            if (e.getButton() == MouseButton.PRIMARY) {
+            if (e.getButton() == MouseButton.SECONDARY && explorerToggle.isSelected()
+                    && "Mandelbrot Set".equals(fractalTypeChoice.getValue())) {
+                Viewport view = absoluteView();
+                pickJulia.accept(view.toFractalX(frameX(canvas, e.getX())), view.toFractalY(frameY(canvas, e.getY())));
+            } else if (e.getButton() == MouseButton.PRIMARY) {
                 canvas.setCursor(Cursor.CLOSED_HAND);
                 startDragX = e.getX();
                 startDragY = e.getY();
@@ -169,10 +434,11 @@ public class FractalRenderer extends Application {
         // Drag to pan the fractal
         canvas.setOnMouseDragged(e -> {
             if (e.getButton() == MouseButton.PRIMARY) {
-                double deltaX = e.getX() - startDragX;
-                double deltaY = e.getY() - startDragY;
-                offsetX = prevOffsetX - (deltaX * 3) / (zoomFactor * WIDTH);
-                offsetY = prevOffsetY - (deltaY * 2) / (zoomFactor * HEIGHT);
+                // Whole pixels, so the renderer can reuse the part of the frame still in view
+                double deltaX = Math.rint(frameX(canvas, e.getX() - startDragX));
+                double deltaY = Math.rint(frameY(canvas, e.getY() - startDragY));
+                offsetX = prevOffsetX - (deltaX * 3) / (zoomFactor * frameWidth);
+                offsetY = prevOffsetY - (deltaY * 2) / (zoomFactor * frameHeight);
                 redrawFractal(gc, fractalTypeChoice, depthField, colorSchemeChoice,
                         colorPicker, juliaCXField, juliaCYField);
             }
@@ -184,52 +450,100 @@ public class FractalRenderer extends Application {
 
         // Zoom in/out using mouse scroll
         canvas.setOnScroll(e -> {
-            double mouseX = e.getX();
-            double mouseY = e.getY();
+            double mouseX = frameX(canvas, e.getX());
+            double mouseY = frameY(canvas, e.getY());
             double oldZoom = zoomFactor;
 
             // Zoom in/out based on scroll direction
-            zoomFactor *= e.getDeltaY() > 0 ? 1.1 : 0.9;
-            zoomFactor = Math.min(Math.max(zoomFactor, MIN_ZOOM), MAX_ZOOM);
+            zoomLevel += e.getDeltaY() > 0 ? 1 : -1;
+            int maxLevel = "Mandelbrot Set".equals(fractalTypeChoice.getValue()) ? MAX_DEEP_ZOOM_LEVEL : MAX_ZOOM_LEVEL;
+            zoomLevel = Math.min(Math.max(zoomLevel, MIN_ZOOM_LEVEL), maxLevel);
+            zoomFactor = Math.pow(ZOOM_STEP, zoomLevel);
 
             // Adjust the offset based on the zoom factor
-            double fractalX = 1.5 * (mouseX - WIDTH/2) / (0.5 * oldZoom * WIDTH) - offsetX;
-            double fractalY = (mouseY - HEIGHT/2) / (0.5 * oldZoom * HEIGHT) - offsetY;
-            offsetX = 1.5 * (mouseX - WIDTH/2) / (0.5 * zoomFactor * WIDTH) - fractalX;
-            offsetY = (mouseY - HEIGHT/2) / (0.5 * zoomFactor * HEIGHT) - fractalY;
+            double fractalX = 1.5 * (mouseX - frameWidth/2) / (0.5 * oldZoom * frameWidth) - offsetX;
+            double fractalY = (mouseY - frameHeight/2) / (0.5 * oldZoom * frameHeight) - offsetY;
+            offsetX = 1.5 * (mouseX - frameWidth/2) / (0.5 * zoomFactor * frameWidth) - fractalX;
+            offsetY = (mouseY - frameHeight/2) / (0.5 * zoomFactor * frameHeight) - fractalY;
+
+            snapToPixels();
+            anchorReference();
 
             // Redraw the fractal
             redrawFractal(gc, fractalTypeChoice, depthField, colorSchemeChoice,
                     colorPicker, juliaCXField, juliaCYField);
         });
 
-        // Update status text on mouse move
-        canvas.setOnMouseMoved(e -> updateStatus(e.getX(), e.getY()));
+        // Update status text on mouse move, and the Julia previews while exploring
+        canvas.setOnMouseMoved(e -> {
+            double x = frameX(canvas, e.getX());
+            double y = frameY(canvas, e.getY());
+            updateStatus(x, y);
+            if (explorerToggle.isSelected() && "Mandelbrot Set".equals(fractalTypeChoice.getValue())) {
+                previewJulia(x, y, previewGrid, colorSchemeChoice.getValue(), pickJulia);
+            }
+        });
 
         // Add tooltips to input controls and show the stage
         addTooltips(depthField, colorSchemeChoice, backgroundPicker, insideColorPicker,
                 colorPicker, juliaCXField, juliaCYField);
 
+        // Publish the metrics over JMX; rendering works the same without
+        engine.setMetrics(metrics);
+        try {
+            metrics.register();
+        } catch (JMException e) {
+            System.err.println("Render metrics not available over JMX: " + e.getMessage());
+        }
+
         // Set the scene and show the stage
         primaryStage.setTitle("Enhanced Fractal Renderer");
         primaryStage.setScene(scene);
         primaryStage.show();
 
+        // The canvas is laid out now, so the first frame can have its size without the pause
+        resizeSettled.stop();
+        resizeFrame(canvas);
+
         // Set default values for Mandelbrot set
         redrawFractal(gc, fractalTypeChoice, depthField, colorSchemeChoice,
                 colorPicker, juliaCXField, juliaCYField);
     }
 
+    // Stop the render workers when the window closes
+    @Override
+    public void stop() {
+        juliaPreviewer.shutdown();
+        pipeline.shutdown();
+        engine.shutdown();
+        if (frameStore != null) frameStore.close();
+        try {
+            if (session != null) session.save(SESSION_FILE);
+        } catch (IOException e) {
+            System.err.println("Could not save session: " + e.getMessage());
+        }
+        try {
+            metrics.unregister();
+        } catch (JMException e) {
+            // Never registered
+        }
+    }
+
     // Redraw the fractal based on the selected type
     private void redrawFractal(GraphicsContext gc, ChoiceBox<String> fractalType, TextField depthField,
                                ChoiceBox<String> colorScheme, ColorPicker colorPicker,
                                TextField juliaCXField, TextField juliaCYField) {
         // Draw the fractal based on the selected type
         try {
-            // Clear the canvas
-            gc.clearRect(0, 0, WIDTH, HEIGHT);
             String type = fractalType.getValue();
+            limitZoom(type);
+            session = new Session(type, depthField.getText(), colorScheme.getValue(), juliaCXField.getText(),
+                    juliaCYField.getText(), zoomLevel, zoomFactor, offsetX, offsetY, referenceX, referenceY,
+                    smoothToggle.isSelected(), equalizeToggle.isSelected(), autoIterationsToggle.isSelected(),
+                    stage.getWidth(), stage.getHeight());
             int param = Integer.parseInt(depthField.getText());
+            // Escape-time fractals may have their iteration count picked for them
+            int iterations = autoIterationsToggle.isSelected() ? iterationBudget.next(zoomFactor) : param;
             String colorMode = colorScheme.getValue();
             customColor = colorPicker.getValue();
 
@@ -237,27 +551,42 @@ public class FractalRenderer extends Application {
             switch (type) {
                 // Draw the Triangle Pyramid
                 case "Sierpinski Triangle":
-                    gc.setFill(backgroundPicker.getValue());
-                    gc.fillRect(0, 0, WIDTH, HEIGHT);
-                    drawSierpinski(gc, param, getFractalColor(colorMode, customColor));
+                    pipeline.cancel();
+                    drawGeometry(gc, type, param, getFractalColor(colorMode, customColor));
+                    exportSource = geometryExport(type, param, getFractalColor(colorMode, customColor));
                     break;
                     // Draw the Mandelbrot Set
                 case "Mandelbrot Set":
-                    fractalImage = drawMandelbrotSet(param, colorMode, insideColorPicker.getValue());
-                    gc.drawImage(fractalImage, 0, 0);
+                    drawMandelbrotSet(gc, iterations, colorMode, insideColorPicker.getValue());
                     break;
                     // Draw the Julia Set
                 case "Julia Set":
                     double cX = Double.parseDouble(juliaCXField.getText());
                     double cY = Double.parseDouble(juliaCYField.getText());
-                    fractalImage = drawJuliaSet(param, cX, cY, colorMode, insideColorPicker.getValue());
-                    gc.drawImage(fractalImage, 0, 0);
+                    drawJuliaSet(gc, iterations, cX, cY, colorMode, insideColorPicker.getValue());
                     break;
                     // Draw the Koch Snowflake
                 case "Koch Snowflake":
-                    gc.setFill(backgroundPicker.getValue());
-                    gc.fillRect(0, 0, WIDTH, HEIGHT);
-                    drawKochSnowflake(gc, param, getFractalColor(colorMode, customColor));
+                    pipeline.cancel();
+                    drawGeometry(gc, type, param, getFractalColor(colorMode, customColor));
+                    exportSource = geometryExport(type, param, getFractalColor(colorMode, customColor));
+                    break;
+                    // Draw any other fractal of the registry
+                default:
+                    if (!fractals.isReady(type)) {
+                        compileFormula(type, () -> {
+                            if (type.equals(fractalType.getValue())) {
+                                redrawFractal(gc, fractalType, depthField, colorScheme, colorPicker,
+                                        juliaCXField, juliaCYField);
+                            }
+                        });
+                        break;
+                    }
+                    FractalKernel kernel = fractals.get(type);
+                    double kernelCX = kernel.julia() ? Double.parseDouble(juliaCXField.getText()) : 0;
+                    double kernelCY = kernel.julia() ? Double.parseDouble(juliaCYField.getText()) : 0;
+                    drawEscapeTimeFractal(gc, absoluteView(), new RenderParams(kernel, kernelCX, kernelCY, iterations),
+                            colorMode, insideColorPicker.getValue());
                     break;
             }
         } catch (Exception ex) {
@@ -274,144 +603,399 @@ public class FractalRenderer extends Application {
         }
     }
 
-    // Draw a Sierpinski triangle with a given depth
-    private void drawSierpinski(GraphicsContext gc, int depth, Color color) {
-        gc.setFill(color);
-        drawSierpinskiRecursive(gc, WIDTH/2, 50, WIDTH-50, HEIGHT-50, 50, HEIGHT-50, depth);
-    }
-
-    // Draw a Sierpinski triangle with a given depth
-    private void drawSierpinskiRecursive(GraphicsContext gc, double x1, double y1, double x2, double y2,
-                                         double x3, double y3, int depth) {
-        if (depth == 0) {
-            gc.fillPolygon(new double[]{x1, x2, x3}, new double[]{y1, y2, y3}, 3);
+    // Rasterize a Sierpinski triangle or Koch snowflake in the current view straight into a frame
+    // buffer and draw it as one image, instead of one canvas command per triangle or line
+    private void drawGeometry(GraphicsContext gc, String type, int depth, Color color) {
+        int argb = Palette.toArgbPre(color);
+        int background = Palette.toArgbPre(backgroundPicker.getValue());
+        GeometryFrame frame = geometryFrames.get(frameWidth, frameHeight);
+        frame.rasterizer().setView(absoluteView());
+        if (type.equals("Koch Snowflake")) {
+            frame.rasterizer().koch(frame.pixels(), 0, frameHeight, depth, argb, background);
         } else {
-            // Calculate midpoints of the sides
-            double midX1 = (x1 + x2) / 2;
-            double midY1 = (y1 + y2) / 2;
-            double midX2 = (x2 + x3) / 2;
-            double midY2 = (y2 + y3) / 2;
-            double midX3 = (x3 + x1) / 2;
-            double midY3 = (y3 + y1) / 2;
-
-            drawSierpinskiRecursive(gc, x1, y1, midX1, midY1, midX3, midY3, depth-1);
-            drawSierpinskiRecursive(gc, midX1, midY1, x2, y2, midX2, midY2, depth-1);
-            drawSierpinskiRecursive(gc, midX3, midY3, midX2, midY2, x3, y3, depth-1);
+            frame.rasterizer().sierpinski(frame.pixels(), 0, frameHeight, depth, argb, background);
         }
+        frame.image().getPixelWriter().setPixels(0, 0, frameWidth, frameHeight, PixelFormat.getIntArgbPreInstance(),
+                frame.pixels(), 0, frameWidth);
+        drawFrame(gc, frame.image(), 1);
     }
 
     // Draw a Mandelbrot set with given parameters
-    private WritableImage drawMandelbrotSet(int maxIterations, String colorMode, Color insideColor) {
-        WritableImage image = new WritableImage(WIDTH, HEIGHT);
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                double zx = 1.5 * (x - WIDTH/2) / (0.5 * zoomFactor * WIDTH) - offsetX;
-                double zy = (y - HEIGHT/2) / (0.5 * zoomFactor * HEIGHT) - offsetY;
-                double cX = zx;
-                double cY = zy;
-                int iter = maxIterations;
-
-                while (zx*zx + zy*zy < 4 && iter > 0) {
-                    double tmp = zx*zx - zy*zy + cX;
-                    zy = 2*zx*zy + cY;
-                    zx = tmp;
-                    iter--;
-                }
-                image.getPixelWriter().setColor(x, y, getColor(iter, maxIterations, colorMode, insideColor));
+    private void drawMandelbrotSet(GraphicsContext gc, int maxIterations, String colorMode, Color insideColor) {
+        if (zoomFactor >= PerturbationKernel.DEEP_ZOOM) {
+            // Pixels are iterated relative to the reference point, so the offsets go in as they are.
+            // The kernel is kept while the reference stays put, so panning and tile caching still work
+            if (deepKernel == null || !deepKernel.isFor(referenceX, referenceY, zoomFactor, maxIterations)) {
+                deepKernel = new PerturbationKernel(referenceX, referenceY, zoomFactor, maxIterations);
             }
+            drawEscapeTimeFractal(gc, new Viewport(frameWidth, frameHeight, zoomFactor, offsetX, offsetY),
+                    new RenderParams(deepKernel, 0, 0, maxIterations), colorMode, insideColor);
+        } else {
+            drawEscapeTimeFractal(gc, absoluteView(), new RenderParams(mandelbrotKernel, 0, 0, maxIterations),
+                    colorMode, insideColor);
         }
-        return image;
     }
 
     // Draw a Julia set with given parameters
-    private WritableImage drawJuliaSet(int maxIterations, double cX, double cY, String colorMode, Color insideColor) {
-        // Exportable image
-        WritableImage image = new WritableImage(WIDTH, HEIGHT);
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                double zx = 1.5 * (x - WIDTH/2) / (0.5 * zoomFactor * WIDTH) - offsetX;
-                double zy = (y - HEIGHT/2) / (0.5 * zoomFactor * HEIGHT) - offsetY;
-                int iter = maxIterations;
-
-                while (zx*zx + zy*zy < 4 && iter > 0) {
-                    double tmp = zx*zx - zy*zy + cX;
-                    zy = 2*zx*zy + cY;
-                    zx = tmp;
-                    iter--;
-                }
-                image.getPixelWriter().setColor(x, y, getColor(iter, maxIterations, colorMode, insideColor));
+    private void drawJuliaSet(GraphicsContext gc, int maxIterations, double cX, double cY,
+                              String colorMode, Color insideColor) {
+        drawEscapeTimeFractal(gc, absoluteView(), new RenderParams(JULIA, cX, cY, maxIterations), colorMode, insideColor);
+    }
+
+    // Take the frame size from the canvas and the screen's output scale; true if it changed
+    private boolean resizeFrame(Canvas canvas) {
+        double scale = stage.getOutputScaleX();
+        int width = (int) Math.round(canvas.getWidth() * scale);
+        int height = (int) Math.round(canvas.getHeight() * scale);
+        outputScale = scale;
+        if (width == frameWidth && height == frameHeight) return false;
+        frameWidth = width;
+        frameHeight = height;
+        return true;
+    }
+
+    // Frame pixel column under canvas position x
+    private double frameX(Canvas canvas, double x) {
+        return x * frameWidth / canvas.getWidth();
+    }
+
+    // Frame pixel row under canvas position y
+    private double frameY(Canvas canvas, double y) {
+        return y * frameHeight / canvas.getHeight();
+    }
+
+    // Draw a frame, or a coarse pass with one pixel per step x step block, over the whole canvas
+    private void drawFrame(GraphicsContext gc, WritableImage image, int step) {
+        shownImage = image;
+        shownStep = step;
+        Canvas canvas = gc.getCanvas();
+        gc.drawImage(image, 0, 0, image.getWidth() * step * canvas.getWidth() / frameWidth,
+                image.getHeight() * step * canvas.getHeight() / frameHeight);
+    }
+
+    // The current view with the reference point folded into the offsets
+    private Viewport absoluteView() {
+        return new Viewport(frameWidth, frameHeight, zoomFactor,
+                offsetX - referenceX.doubleValue(), offsetY - referenceY.doubleValue());
+    }
+
+    // Snap the offsets to whole pixels so the view lines up with the tile grid of its zoom level
+    private void snapToPixels() {
+        offsetX = Math.rint(offsetX * zoomFactor * frameWidth / 3) * 3 / (zoomFactor * frameWidth);
+        offsetY = Math.rint(offsetY * 0.5 * zoomFactor * frameHeight) / (0.5 * zoomFactor * frameHeight);
+    }
+
+    // Only the Mandelbrot set zooms past MAX_ZOOM. Switching to another fractal in a deep zoom
+    // backs out to MAX_ZOOM around the same center, which plain doubles can still draw
+    private void limitZoom(String type) {
+        if ("Mandelbrot Set".equals(type) || zoomLevel <= MAX_ZOOM_LEVEL) return;
+        zoomLevel = MAX_ZOOM_LEVEL;
+        zoomFactor = Math.pow(ZOOM_STEP, zoomLevel);
+        anchorReference();
+        snapToPixels();
+    }
+
+    // In deep zoom, move the reference point to the view center and zero the offsets; doubles then
+    // only ever hold distances of a few screens. Below deep zoom, fold it back into the offsets
+    private void anchorReference() {
+        if (zoomFactor >= PerturbationKernel.DEEP_ZOOM) {
+            referenceX = referenceX.subtract(new BigDecimal(offsetX));
+            referenceY = referenceY.subtract(new BigDecimal(offsetY));
+            offsetX = 0;
+            offsetY = 0;
+        } else if (referenceX.signum() != 0 || referenceY.signum() != 0) {
+            offsetX -= referenceX.doubleValue();
+            offsetY -= referenceY.doubleValue();
+            referenceX = BigDecimal.ZERO;
+            referenceY = BigDecimal.ZERO;
+        }
+    }
+
+    // Hand the view to the background pipeline and draw each pass as it arrives
+    private void drawEscapeTimeFractal(GraphicsContext gc, Viewport view, RenderParams params,
+                                       String colorMode, Color insideColor) {
+        int[] colors = paletteCache.lookupTable(getPalette(colorMode, customColor), params.maxIterations(), insideColor);
+        ColoringPass coloring = new ColoringPass(colors, equalizeToggle.isSelected());
+        RenderParams colored = params.withSmooth(smoothToggle.isSelected());
+        escapeIterations = params.maxIterations();
+        exportSource = (width, height) -> ImageExporter.escapeTime(engine,
+                new Viewport(width, height, view.zoom(), view.offsetX(), view.offsetY()), colored, coloring);
+        pipeline.submit(view, colored, coloring, (image, step) -> drawFrame(gc, image, step));
+    }
+
+    // Get the palette for a color scheme name
+    private Palette getPalette(String colorMode, Color customColor) {
+        if ("Custom".equals(colorMode)) return new CustomPalette(customColor);
+        return palettes.getOrDefault(colorMode, MONOCHROME);
+    }
+
+    // Register the built-in palettes and the gradients bundled with the application
+    private void loadPalettes() {
+        palettes.put("Monochrome", MONOCHROME);
+        palettes.put("Rainbow", new RainbowPalette());
+        try {
+            palettes.put("Fire", GradientPalette.loadResource("Fire", "palettes/fire.gradient"));
+            palettes.put("Ocean", GradientPalette.loadResource("Ocean", "palettes/ocean.gradient"));
+        } catch (IOException e) {
+            showAlert("Error", "Failed to load palettes: " + e.getMessage());
+        }
+    }
+
+    // Find the escape-time fractals; without the bundled formulas Mandelbrot and Julia are still there
+    private void loadFractals() {
+        try {
+            fractals = FractalRegistry.load();
+        } catch (IOException e) {
+            showAlert("Error", "Failed to load formulas: " + e.getMessage());
+            fractals = new FractalRegistry();
+            fractals.register(MANDELBROT);
+            fractals.register(JULIA);
+        }
+    }
+
+    // Compile a formula the first time it is drawn, in the background, then run whenReady on the
+    // FX thread. Until then the last frame stays on the canvas
+    private void compileFormula(String name, Runnable whenReady) {
+        pipeline.cancel();
+        if (name.equals(compilingFormula)) return;
+        compilingFormula = name;
+        statusText.setText("Compiling " + name + "...");
+        Task<FractalKernel> compile = new Task<>() {
+            @Override
+            protected FractalKernel call() {
+                return fractals.get(name);
             }
+        };
+        compile.setOnSucceeded(e -> {
+            compilingFormula = null;
+            whenReady.run();
+        });
+        compile.setOnFailed(e -> {
+            compilingFormula = null;
+            showAlert("Error", "Failed to compile " + name + ": " + compile.getException().getMessage());
+        });
+        Thread thread = new Thread(compile, "fractal-compile");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Ask for a "Name = formula" line, check it parses and select it, which compiles and draws it.
+    // Returns false if nothing was added
+    private boolean addFormula(ChoiceBox<String> fractalType) {
+        TextInputDialog dialog = new TextInputDialog("Cubic Ship = (abs(re(z)) + i*abs(im(z)))^3 + c");
+        dialog.setTitle("Add Formula");
+        dialog.setHeaderText("Name = formula in z, c and i, with + - * / ^ and re, im, abs, conj, exp, log, sin, cos");
+        Optional<String> line = dialog.showAndWait();
+        if (line.isEmpty() || line.get().isBlank()) return false;
+        int equals = line.get().indexOf('=');
+        String name = equals < 0 ? line.get().strip() : line.get().substring(0, equals).strip();
+        String formula = equals < 0 ? name : line.get().substring(equals + 1).strip();
+        if (List.of("Sierpinski Triangle", "Mandelbrot Set", "Julia Set", "Koch Snowflake").contains(name)) {
+            showAlert("Error", "Name already taken: " + name);
+            return false;
         }
-        return image;
-    }
-
-    // Draw a koch snowflake with given depth
-    private void drawKochSnowflake(GraphicsContext gc, int depth, Color color) {
-        double length = WIDTH * 0.6;
-        double height = length * Math.sqrt(3) / 2;
-        double x1 = (WIDTH - length) / 2;
-        double y1 = HEIGHT/2 + height/3;
-        double x2 = WIDTH/2;
-        double y2 = HEIGHT/2 - 2*height/3;
-        double x3 = (WIDTH + length)/2;
-        double y3 = HEIGHT/2 + height/3;
-
-        // Draw equil. Triangle
-        gc.setStroke(color);
-        drawKochLine(gc, x1, y1, x2, y2, depth);
-        drawKochLine(gc, x2, y2, x3, y3, depth);
-        drawKochLine(gc, x3, y3, x1, y1, depth);
-    }
-
-    // Draw a Koch line with given depth
-    private void drawKochLine(GraphicsContext gc, double x1, double y1, double x5, double y5, int depth) {
-        if (depth == 0) {
-            gc.strokeLine(x1, y1, x5, y5);
-        } else {
-            double dx = x5 - x1;
-            double dy = y5 - y1;
-            double x2 = x1 + dx/3;
-            double y2 = y1 + dy/3;
-            double x3 = (x1 + x5)/2 + Math.sqrt(3)*(y1 - y5)/6;
-            double y3 = (y1 + y5)/2 + Math.sqrt(3)*(x5 - x1)/6;
-            double x4 = x1 + 2*dx/3;
-            double y4 = y1 + 2*dy/3;
-
-            drawKochLine(gc, x1, y1, x2, y2, depth-1);
-            drawKochLine(gc, x2, y2, x3, y3, depth-1);
-            drawKochLine(gc, x3, y3, x4, y4, depth-1);
-            drawKochLine(gc, x4, y4, x5, y5, depth-1);
+        try {
+            fractals.addFormula(name, formula);
+        } catch (RuntimeException ex) {
+            showAlert("Error", ex.getMessage());
+            return false;
         }
+        if (!fractalType.getItems().contains(name)) {
+            fractalType.getItems().add(fractalType.getItems().size() - 1, name);
+        }
+        fractalType.setValue(name);
+        return true;
     }
 
-    // Get color based on iteration count and color mode
-    private Color getColor(int iter, int maxIter, String mode, Color insideColor) {
-        if (iter == maxIter) return insideColor;
-        switch (mode) {
-            case "Rainbow": return Color.hsb(360.0 * iter / maxIter, 1, 1);
-            case "Custom": return customColor;
-            default: return Color.WHITE;
+    // Let the user pick a gradient file and add it to the color schemes
+    private void loadPaletteFile(Stage stage, ChoiceBox<String> colorScheme) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Gradient Palette", "*.gradient", "*.txt"));
+        File file = fileChooser.showOpenDialog(stage);
+        if (file == null) return;
+        try {
+            GradientPalette palette = GradientPalette.load(file.toPath());
+            palettes.put(palette.name(), palette);
+            if (!colorScheme.getItems().contains(palette.name())) colorScheme.getItems().add(palette.name());
+            colorScheme.setValue(palette.name());
+        } catch (IOException e) {
+            showAlert("Error", "Failed to load palette: " + e.getMessage());
+        }
+    }
+
+    // Put the controls and the view back the way a saved session had them
+    private void restoreSession(Session saved, ChoiceBox<String> fractalType, TextField depthField,
+                                ChoiceBox<String> colorScheme, TextField juliaCXField, TextField juliaCYField) {
+        if (fractalType.getItems().contains(saved.fractalType())) fractalType.setValue(saved.fractalType());
+        if (colorScheme.getItems().contains(saved.colorScheme())) colorScheme.setValue(saved.colorScheme());
+        depthField.setText(saved.depth());
+        juliaCXField.setText(saved.juliaCX());
+        juliaCYField.setText(saved.juliaCY());
+        smoothToggle.setSelected(saved.smooth());
+        equalizeToggle.setSelected(saved.equalize());
+        autoIterationsToggle.setSelected(saved.autoIterations());
+        zoomLevel = saved.zoomLevel();
+        zoomFactor = saved.zoomFactor();
+        offsetX = saved.offsetX();
+        offsetY = saved.offsetY();
+        referenceX = saved.referenceX();
+        referenceY = saved.referenceY();
+    }
+
+    // Append the current center, zoom and Julia constant two seconds after the last keyframe
+    private void addKeyframe(TextField juliaCXField, TextField juliaCYField) {
+        try {
+            double time = keyframes.isEmpty() ? 0 : keyframes.getLast().time() + 2;
+            keyframes.add(new Keyframe(time, referenceX.subtract(new BigDecimal(offsetX)),
+                    referenceY.subtract(new BigDecimal(offsetY)), zoomFactor,
+                    Double.parseDouble(juliaCXField.getText()), Double.parseDouble(juliaCYField.getText())));
+            statusText.setText("Keyframe " + keyframes.size() + " at " + time + " s");
+        } catch (NumberFormatException e) {
+            showAlert("Error", "Invalid Julia constant: " + e.getMessage());
+        }
+    }
+
+    // Write the recorded keyframes for AnimationRenderer and start a new list
+    private void saveKeyframes(Stage stage) {
+        if (keyframes.isEmpty()) {
+            showAlert("Error", "Add keyframes first");
+            return;
+        }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Keyframes", "*.keyframes", "*.txt"));
+        File file = fileChooser.showSaveDialog(stage);
+        if (file == null) return;
+        try {
+            Keyframe.save(keyframes, file.toPath());
+            keyframes.clear();
+            showAlert("Success", "Keyframes saved. Render them with AnimationRenderer --keyframes " + file.getName());
+        } catch (IOException e) {
+            showAlert("Error", "Failed to save keyframes: " + e.getMessage());
+        }
+    }
+
+    // Request Julia previews for the constant under the cursor, and in grid mode for the constants
+    // around it. Clicking a preview picks its constant
+    private void previewJulia(double x, double y, GridPane previewGrid, String colorMode,
+                              BiConsumer<Double, Double> pick) {
+        Viewport view = absoluteView();
+        int size = previewGridToggle.isSelected() ? PREVIEW_GRID : 1;
+        double spacing = PREVIEW_SPACING * outputScale * 3 / (zoomFactor * frameWidth);
+        double[] cX = new double[size * size];
+        double[] cY = new double[size * size];
+        for (int i = 0; i < cX.length; i++) {
+            cX[i] = view.toFractalX(x) + (i % size - size / 2) * spacing;
+            cY[i] = view.toFractalY(y) + (i / size - size / 2) * spacing;
+        }
+        if (previewGrid.getChildren().size() != cX.length) {
+            previewGrid.getChildren().clear();
+            for (int i = 0; i < cX.length; i++) {
+                ImageView preview = new ImageView();
+                preview.setCursor(Cursor.HAND);
+                preview.setOnMouseClicked(e -> {
+                    if (preview.getUserData() instanceof double[] c) pick.accept(c[0], c[1]);
+                });
+                previewGrid.add(preview, i % size, i / size);
+            }
         }
+        int maxIterations = Math.min(escapeIterations > 0 ? escapeIterations : 300, MAX_PREVIEW_ITERATIONS);
+        int[] colors = paletteCache.lookupTable(getPalette(colorMode, customColor), maxIterations,
+                insideColorPicker.getValue());
+        // Thumbnails are half the size of the single preview; both have one pixel per screen pixel
+        int shrink = size == 1 ? 1 : 2;
+        int previewWidth = (int) Math.round(PREVIEW_WIDTH / shrink * outputScale);
+        int previewHeight = (int) Math.round(PREVIEW_HEIGHT / shrink * outputScale);
+        juliaPreviewer.request(cX, cY, previewWidth, previewHeight, maxIterations, colors,
+                smoothToggle.isSelected(), (index, pcX, pcY, image) -> {
+                    if (index >= previewGrid.getChildren().size()) return;
+                    ImageView preview = (ImageView) previewGrid.getChildren().get(index);
+                    preview.setFitWidth(PREVIEW_WIDTH / shrink);
+                    preview.setFitHeight(PREVIEW_HEIGHT / shrink);
+                    preview.setImage(image);
+                    preview.setUserData(new double[]{pcX, pcY});
+                });
+    }
+
+    // A Julia constant with enough decimals to tell neighbouring pixels of the view apart
+    private String formatConstant(double c) {
+        int digits = Math.max(4, (int) Math.ceil(Math.log10(zoomFactor * frameWidth)) + 1);
+        return new BigDecimal(c).setScale(digits, RoundingMode.HALF_EVEN).stripTrailingZeros().toPlainString();
     }
 
     // Update status text with zoom factor and fractal coordinates
     private void updateStatus(double x, double y) {
-        double fractalX = 1.5 * (x - WIDTH/2) / (0.5 * zoomFactor * WIDTH) - offsetX;
-        double fractalY = (y - HEIGHT/2) / (0.5 * zoomFactor * HEIGHT) - offsetY;
-        statusText.setText(String.format("Zoom: %.2fx | Coordinates: (%.4f, %.4f)", zoomFactor, fractalX, fractalY));
+        double fractalX = 1.5 * (x - frameWidth/2) / (0.5 * zoomFactor * frameWidth) - offsetX;
+        double fractalY = (y - frameHeight/2) / (0.5 * zoomFactor * frameHeight) - offsetY;
+        String iterations = autoIterationsToggle.isSelected() ? " | Iterations: " + escapeIterations : "";
+        if (zoomFactor < PerturbationKernel.DEEP_ZOOM) {
+            statusText.setText(String.format("Zoom: %.2fx | Coordinates: (%.4f, %.4f)", zoomFactor, fractalX, fractalY)
+                    + iterations);
+        } else {
+            // Enough decimals to tell neighbouring pixels apart
+            int digits = (int) Math.ceil(Math.log10(zoomFactor * frameWidth)) + 1;
+            statusText.setText(String.format("Zoom: %.3gx | Coordinates: (%s, %s)", zoomFactor,
+                    referenceX.add(new BigDecimal(fractalX)).setScale(digits, RoundingMode.HALF_EVEN).toPlainString(),
+                    referenceY.add(new BigDecimal(fractalY)).setScale(digits, RoundingMode.HALF_EVEN).toPlainString())
+                    + iterations);
+        }
     }
 
-    // Saves Image to File
-    private void saveImage(Canvas canvas, Stage stage) {
+    // Bands of a geometric fractal in the current view, drawn by the software rasterizer
+    private ExportSource geometryExport(String type, int depth, Color color) {
+        int argb = Palette.toArgbPre(color);
+        int background = Palette.toArgbPre(backgroundPicker.getValue());
+        Viewport view = absoluteView();
+        return (width, height) -> {
+            GeometryRasterizer rasterizer = new GeometryRasterizer(
+                    new Viewport(width, height, view.zoom(), view.offsetX(), view.offsetY()));
+            if (type.equals("Koch Snowflake")) {
+                return (y0, rows, band) -> rasterizer.koch(band, y0, rows, depth, argb, background);
+            }
+            return (y0, rows, band) -> rasterizer.sierpinski(band, y0, rows, depth, argb, background);
+        };
+    }
+
+    // Saves Image to File at a chosen size, rendered band by band in the background so even
+    // images far larger than the screen only need a few bands of memory
+    private void saveImage(Stage stage) {
+        if (exportSource == null) return;
+        ExportSource source = exportSource;
         try {
-            WritableImage image = canvas.snapshot(new SnapshotParameters(), null);
+            TextInputDialog sizeDialog = new TextInputDialog(frameWidth + "x" + frameHeight);
+            sizeDialog.setTitle("Save Image");
+            sizeDialog.setHeaderText(null);
+            sizeDialog.setContentText("Image size (width x height):");
+            Optional<String> size = sizeDialog.showAndWait();
+            if (size.isEmpty()) return;
+            String[] parts = size.get().strip().split("\\s*[xX*]\\s*");
+            if (parts.length != 2) throw new IllegalArgumentException("Expected a size like 1200x800");
+            int width = Integer.parseInt(parts[0]);
+            int height = Integer.parseInt(parts[1]);
+            if (width <= 0 || height <= 0) throw new IllegalArgumentException("Image size must be positive");
+
             FileChooser fileChooser = new FileChooser();
-            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PNG Image", "*.png"));
-            File file = fileChooser.showSaveDialog(stage);
-            if (file != null) {
-                ImageIO.write(javafx.embed.swing.SwingFXUtils.fromFXImage(image, null), "png", file);
-                showAlert("Success", "Image saved successfully!");
-            }
+            FileChooser.ExtensionFilter png = new FileChooser.ExtensionFilter("PNG Image", "*.png");
+            fileChooser.getExtensionFilters().addAll(png, new FileChooser.ExtensionFilter("Raw ARGB", "*.raw"));
+            File chosen = fileChooser.showSaveDialog(stage);
+            if (chosen == null) return;
+            File file = chosen.getName().contains(".") ? chosen
+                    : new File(chosen.getPath() + (fileChooser.getSelectedExtensionFilter() == png ? ".png" : ".raw"));
+
+            Task<Void> export = new Task<>() {
+                @Override
+                protected Void call() throws Exception {
+                    ImageExporter.export(source.create(width, height), width, height, file.toPath(),
+                            done -> updateProgress(done, 1));
+                    return null;
+                }
+            };
+            export.progressProperty().addListener((obs, oldVal, newVal) ->
+                    statusText.setText(String.format("Saving image... %.0f%%", newVal.doubleValue() * 100)));
+            export.setOnSucceeded(e -> showAlert("Success", "Image saved successfully!"));
+            export.setOnFailed(e -> showAlert("Error", "Failed to save image: " + export.getException().getMessage()));
+            Thread thread = new Thread(export, "fractal-export");
+            thread.setDaemon(true);
+            thread.start();
         } catch (Exception e) {
             showAlert("Error", "Failed to save image: " + e.getMessage());
         }
@@ -431,8 +1015,11 @@ public class FractalRenderer extends Application {
                            ChoiceBox<String> colorScheme, ColorPicker colorPicker,
                            TextField juliaCXField, TextField juliaCYField) {
         zoomFactor = 1.0;
+        zoomLevel = 0;
         offsetX = 0;
         offsetY = 0;
+        referenceX = BigDecimal.ZERO;
+        referenceY = BigDecimal.ZERO;
         redrawFractal(gc, fractalType, depthField, colorScheme, colorPicker, juliaCXField, juliaCYField);
     }
 
@@ -0,0 +1,48 @@
+package org.example.fractalgenerator;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event spanning one view rendered by RenderPipeline, from the start of the render to the
+// last pass handed to the FX thread
+@Name("org.example.fractalgenerator.FrameRendered")
+@Label("Frame Rendered")
+@Category({"Fractal Generator", "Rendering"})
+@Description("A view rendered by the background render pipeline")
+public class FrameRenderedEvent extends jdk.jfr.Event {
+    @Label("Kind")
+    @Description("recolor, pan, stored, cached, tiled, full, time-boxed or cancelled")
+    String kind;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Pixels")
+    @Description("Pixels iterated, summed over all passes")
+    long pixels;
+
+    @Label("Iterations")
+    long iterations;
+
+    @Label("Tiles")
+    int tiles;
+
+    @Label("Cache Hits")
+    int cacheHits;
+
+    @Label("Cache Misses")
+    int cacheMisses;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+
+    @Label("Queue Depth")
+    int queueDepth;
+}
@@ -0,0 +1,369 @@
+package org.example.fractalgenerator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Finished frames on disk, so a view rendered once is never computed again, not even after a
+// restart. Each frame is one file named after the SHA-256 of its key, the kernel's identity,
+// the Julia constant, the view and the iteration count, and holds the key followed by the
+// counts, as 16-bit values when they fit, and the smooth values if the frame had them. Files are
+// written in the background and replaced atomically, and the least recently used ones are
+// deleted beyond the size limit. They are written through a small buffer and each array is read
+// in one go rather than memory-mapped: a mapping holds its file open until it is garbage
+// collected, which on Windows stops the file from being replaced or deleted
+public class FrameStore {
+    private static final int MAGIC = 0x46524D53;
+    private static final int VERSION = 1;
+    private static final int SMOOTH = 1;
+    private static final int SHORT_COUNTS = 2;
+    // Magic, version, width, height, maxIterations, flags and the key length
+    private static final int HEADER_INTS = 7;
+    // Bytes written at a time
+    private static final int CHUNK = 1 << 16;
+
+    private final Path directory;
+    private final long maxBytes;
+    // Copies the arrays of saved frames, while the caller goes on to color them
+    private final ExecutorService copier = daemonExecutor("fractal-frame-store-copy");
+    private final ExecutorService writer = daemonExecutor("fractal-frame-store");
+    // The copy of the last saved frame
+    private volatile Future<?> copying = CompletableFuture.completedFuture(null);
+    // Only used by the writer thread
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(CHUNK);
+    // Holds one array of the frame being loaded, grown to the largest so far. Guarded by readLock
+    private final Object readLock = new Object();
+    private ByteBuffer readBuffer = ByteBuffer.allocateDirect(0);
+    // Size of every stored file by name, least recently used first, and their total. The directory
+    // is listed once, by the writer thread, and then kept up to date as frames are written, loaded
+    // and deleted. Guarded by this
+    private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    // Keep at most maxBytes of frames in directory, which is created if needed
+    public FrameStore(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        writer.execute(() -> {
+            try {
+                scan();
+            } catch (IOException e) {
+                System.err.println("Could not list stored frames: " + e.getMessage());
+            }
+        });
+    }
+
+    private static ExecutorService daemonExecutor(String name) {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Store under fractal.store.dir (default ~/.fractalgenerator/frames) limited to fractal.store.mb
+    // megabytes (default 1024), or null if the limit is 0 or the directory cannot be created
+    public static FrameStore fromSystemProperties() {
+        long megabytes = Long.getLong("fractal.store.mb", 1024);
+        if (megabytes <= 0) return null;
+        Path directory = Path.of(System.getProperty("fractal.store.dir",
+                Path.of(System.getProperty("user.home"), ".fractalgenerator", "frames").toString()));
+        try {
+            return new FrameStore(directory, megabytes * 1024 * 1024);
+        } catch (IOException e) {
+            System.err.println("Frame store not available: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // Everything the counts depend on; smooth values are extra data of the same frame
+    static String key(Viewport view, RenderParams params) {
+        FractalKernel kernel = params.kernel();
+        String julia = kernel.julia() ? params.juliaCX() + "," + params.juliaCY() : "-";
+        return kernel.identity() + "|" + julia + "|" + view.width() + "x" + view.height() + "|" + view.zoom()
+                + "|" + view.offsetX() + "," + view.offsetY() + "|" + params.maxIterations();
+    }
+
+    private Path file(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(digest) + ".frame");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Fill counts, and smooth unless it is null, from the stored frame. Returns false if the frame
+    // is not stored, or stored without the smooth values asked for
+    public boolean load(Viewport view, RenderParams params, int[] counts, float[] smooth) {
+        String key = key(view, params);
+        Path file = file(key);
+        if (!Files.exists(file)) return miss();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (!read(channel, view, params, key, counts, smooth)) return miss();
+            // Recently used frames are the last to be deleted, in this session and the next
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            synchronized (this) {
+                sizes.get(file.getFileName().toString());
+            }
+        } catch (IOException | RuntimeException e) {
+            // A damaged or truncated file is just a miss
+            return miss();
+        }
+        synchronized (this) {
+            hits++;
+        }
+        return true;
+    }
+
+    // Read the stored frame from channel, or return false if it is not the frame asked for
+    private boolean read(FileChannel channel, Viewport view, RenderParams params, String key, int[] counts,
+                         float[] smooth) throws IOException {
+        synchronized (readLock) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            long countsStart = align(HEADER_INTS * Integer.BYTES + keyBytes.length);
+            ByteBuffer header = read(channel, 0, (int) countsStart);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != view.width()
+                    || header.getInt() != view.height() || header.getInt() != params.maxIterations()) return false;
+            int flags = header.getInt();
+            if (smooth != null && (flags & SMOOTH) == 0) return false;
+            if (header.getInt() != keyBytes.length) return false;
+            // Guards against the astronomically unlikely hash collision
+            if (!header.slice(header.position(), keyBytes.length).equals(ByteBuffer.wrap(keyBytes))) return false;
+            // Each array in one read, then copied out in bulk
+            int pixels = view.width() * view.height();
+            long smoothStart;
+            if ((flags & SHORT_COUNTS) != 0) {
+                ShortBuffer shorts = read(channel, countsStart, pixels * Short.BYTES).asShortBuffer();
+                for (int i = 0; i < pixels; i++) {
+                    counts[i] = shorts.get(i) & 0xffff;
+                }
+                smoothStart = countsStart + align(pixels * Short.BYTES);
+            } else {
+                read(channel, countsStart, pixels * Integer.BYTES).asIntBuffer().get(counts, 0, pixels);
+                smoothStart = countsStart + (long) pixels * Integer.BYTES;
+            }
+            if (smooth != null) {
+                read(channel, smoothStart, pixels * Float.BYTES).asFloatBuffer().get(smooth, 0, pixels);
+            }
+            return true;
+        }
+    }
+
+    private synchronized boolean miss() {
+        misses++;
+        return false;
+    }
+
+    // Write a finished frame in the background. The arrays are copied in the background too: the
+    // caller may read them meanwhile, but must call awaitCopied before changing them
+    public void save(Viewport view, RenderParams params, int[] counts, float[] smooth) {
+        int pixels = view.width() * view.height();
+        String key = key(view, params);
+        copying = copier.submit(() -> {
+            int[] countsCopy = Arrays.copyOf(counts, pixels);
+            float[] smoothCopy = smooth == null ? null : Arrays.copyOf(smooth, pixels);
+            writer.execute(() -> {
+                try {
+                    write(key, view, params.maxIterations(), countsCopy, smoothCopy);
+                    evict();
+                } catch (IOException e) {
+                    System.err.println("Could not store frame: " + e.getMessage());
+                }
+            });
+        });
+    }
+
+    // Wait until the arrays of the last save have been copied
+    public void awaitCopied() {
+        try {
+            copying.get();
+        } catch (ExecutionException e) {
+            // Closed meanwhile: the frame is not stored
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(String key, Viewport view, int maxIterations, int[] counts, float[] smooth) throws IOException {
+        Path file = file(key);
+        // Already stored, with as much as this frame has
+        if (smooth == null && Files.exists(file)) return;
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        boolean shortCounts = maxIterations <= 0xffff;
+        int pixels = counts.length;
+        long countsStart = align(HEADER_INTS * Integer.BYTES + keyBytes.length);
+        long smoothStart = countsStart + align((long) pixels * (shortCounts ? Short.BYTES : Integer.BYTES));
+        long size = smoothStart + (smooth == null ? 0 : (long) pixels * Float.BYTES);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = writeBuffer.clear();
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(view.width()).putInt(view.height()).putInt(maxIterations)
+                    .putInt((smooth == null ? 0 : SMOOTH) | (shortCounts ? SHORT_COUNTS : 0)).putInt(keyBytes.length);
+            for (byte b : keyBytes) {
+                room(channel, buffer, 1);
+                buffer.put(b);
+            }
+            pad(channel, buffer, countsStart);
+            for (int i = 0; i < pixels; i++) {
+                room(channel, buffer, Integer.BYTES);
+                if (shortCounts) buffer.putShort((short) counts[i]);
+                else buffer.putInt(counts[i]);
+            }
+            if (smooth != null) {
+                pad(channel, buffer, smoothStart);
+                for (int i = 0; i < pixels; i++) {
+                    room(channel, buffer, Float.BYTES);
+                    buffer.putFloat(smooth[i]);
+                }
+            }
+            drain(channel, buffer);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            Long replaced = sizes.put(file.getFileName().toString(), size);
+            totalBytes += size - (replaced == null ? 0 : replaced);
+        }
+    }
+
+    // The given number of bytes of the file from position on, in readBuffer
+    private ByteBuffer read(FileChannel channel, long position, int bytes) throws IOException {
+        if (readBuffer.capacity() < bytes) readBuffer = ByteBuffer.allocateDirect(bytes);
+        ByteBuffer buffer = readBuffer.clear().limit(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+        }
+        return buffer.flip();
+    }
+
+    // Make room for bytes more in buffer, writing out what it holds if needed
+    private static void room(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) drain(channel, buffer);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    // Write zeros up to the file position end
+    private static void pad(FileChannel channel, ByteBuffer buffer, long end) throws IOException {
+        while (channel.position() + buffer.position() < end) {
+            room(channel, buffer, 1);
+            buffer.put((byte) 0);
+        }
+    }
+
+    // Next multiple of 4 bytes, so the arrays after the key are aligned
+    private static long align(long position) {
+        return (position + 3) & ~3L;
+    }
+
+    private static int align(int position) {
+        return (position + 3) & ~3;
+    }
+
+    // Learn the size of the frames stored by earlier sessions, least recently used first
+    private void scan() throws IOException {
+        record Stored(String name, FileTime used, long size) {
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(".frame")).toList();
+        }
+        List<Stored> stored = new ArrayList<>();
+        for (Path path : files) {
+            try {
+                stored.add(new Stored(path.getFileName().toString(), Files.getLastModifiedTime(path), Files.size(path)));
+            } catch (IOException e) {
+                // Deleted meanwhile
+            }
+        }
+        stored.sort(Comparator.comparing(Stored::used));
+        synchronized (this) {
+            // Frames written or loaded this session are more recent, and already known
+            LinkedHashMap<String, Long> known = new LinkedHashMap<>(sizes);
+            sizes.clear();
+            totalBytes = 0;
+            for (Stored frame : stored) {
+                if (!known.containsKey(frame.name())) sizes.put(frame.name(), frame.size());
+            }
+            sizes.putAll(known);
+            for (long size : sizes.values()) totalBytes += size;
+        }
+    }
+
+    // Delete the least recently used frames until the rest fit in maxBytes
+    private void evict() throws IOException {
+        List<String> deleted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> eldest = sizes.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> frame = eldest.next();
+                totalBytes -= frame.getValue();
+                deleted.add(frame.getKey());
+                eldest.remove();
+            }
+        }
+        for (String name : deleted) {
+            Files.deleteIfExists(directory.resolve(name));
+        }
+    }
+
+    // Wait for frames still being written, up to a few seconds
+    public void close() {
+        copier.shutdown();
+        try {
+            copier.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,180 @@
+package org.example.fractalgenerator;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Generates the primitives of the geometric fractals into a fixed-size vertex buffer, iteratively
+// with an explicit stack. Shapes outside the clip rectangle are dropped before they are subdivided,
+// and shapes smaller than a pixel are emitted whole instead of being split further, so the work
+// is bounded by the visible area rather than 3^depth or 4^depth. Whenever the buffer fills up it
+// is handed to the drain and reused, so memory stays the same at any depth
+public class GeometryBuffer {
+    // Primitives held before the buffer is drained
+    public static final int CAPACITY = 1 << 14;
+    // Shapes whose extent is below this many pixels are not subdivided any further
+    private static final double MIN_SIZE = 1.0;
+    private static final double KOCH_BULGE = Math.sqrt(3) / 6;
+
+    public enum Kind {
+        // x1, y1, x2, y2, x3, y3 per filled triangle
+        TRIANGLES(6),
+        // x1, y1, x2, y2 per line segment
+        LINES(4);
+
+        private final int stride;
+
+        Kind(int stride) {
+            this.stride = stride;
+        }
+
+        public int stride() {
+            return stride;
+        }
+    }
+
+    private final double[] vertices = new double[CAPACITY * 6];
+    private Kind kind = Kind.TRIANGLES;
+    private int size;
+    private Consumer<GeometryBuffer> drain;
+    private double clipMinX, clipMinY, clipMaxX, clipMaxY;
+    // Pending shapes: their vertices followed by the remaining depth
+    private double[] stack = new double[64];
+
+    // Only shapes reaching into this rectangle, in pixels, are generated
+    public void setClip(double minX, double minY, double maxX, double maxY) {
+        clipMinX = minX;
+        clipMinY = minY;
+        clipMaxX = maxX;
+        clipMaxY = maxY;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    // Number of primitives in the buffer
+    public int size() {
+        return size;
+    }
+
+    // Primitive i starts at vertices()[i * kind().stride()]
+    public double[] vertices() {
+        return vertices;
+    }
+
+    // Triangles of a Sierpinski triangle with the given corners
+    public void sierpinski(double x1, double y1, double x2, double y2, double x3, double y3, int depth,
+                           Consumer<GeometryBuffer> drain) {
+        begin(Kind.TRIANGLES, drain);
+        int top = push(0, x1, y1, x2, y2, x3, y3, depth);
+        while (top > 0) {
+            top -= 7;
+            double[] s = stack;
+            double ax = s[top], ay = s[top + 1], bx = s[top + 2], by = s[top + 3], cx = s[top + 4], cy = s[top + 5];
+            int d = (int) s[top + 6];
+            double minX = Math.min(ax, Math.min(bx, cx));
+            double maxX = Math.max(ax, Math.max(bx, cx));
+            double minY = Math.min(ay, Math.min(by, cy));
+            double maxY = Math.max(ay, Math.max(by, cy));
+            if (culled(minX, minY, maxX, maxY)) continue;
+            if (d == 0 || Math.max(maxX - minX, maxY - minY) < MIN_SIZE) {
+                emit(ax, ay, bx, by, cx, cy);
+                continue;
+            }
+            double abX = (ax + bx) / 2, abY = (ay + by) / 2;
+            double bcX = (bx + cx) / 2, bcY = (by + cy) / 2;
+            double caX = (cx + ax) / 2, caY = (cy + ay) / 2;
+            top = push(top, caX, caY, bcX, bcY, cx, cy, d - 1);
+            top = push(top, abX, abY, bx, by, bcX, bcY, d - 1);
+            top = push(top, ax, ay, abX, abY, caX, caY, d - 1);
+        }
+        finish();
+    }
+
+    // Line segments of a Koch snowflake over the triangle with the given corners
+    public void kochSnowflake(double x1, double y1, double x2, double y2, double x3, double y3, int depth,
+                              Consumer<GeometryBuffer> drain) {
+        begin(Kind.LINES, drain);
+        kochCurve(x1, y1, x2, y2, depth);
+        kochCurve(x2, y2, x3, y3, depth);
+        kochCurve(x3, y3, x1, y1, depth);
+        finish();
+    }
+
+    private void kochCurve(double x1, double y1, double x5, double y5, int depth) {
+        int top = push(0, x1, y1, x5, y5, 0, 0, depth);
+        while (top > 0) {
+            top -= 7;
+            double[] s = stack;
+            double ax = s[top], ay = s[top + 1], ex = s[top + 2], ey = s[top + 3];
+            int d = (int) s[top + 6];
+            double length = Math.hypot(ex - ax, ey - ay);
+            // The curve never strays further from its chord than the first bump
+            double bulge = d == 0 ? 0 : length * KOCH_BULGE;
+            if (culled(Math.min(ax, ex) - bulge, Math.min(ay, ey) - bulge,
+                    Math.max(ax, ex) + bulge, Math.max(ay, ey) + bulge)) continue;
+            if (d == 0 || length < MIN_SIZE) {
+                emit(ax, ay, ex, ey, 0, 0);
+                continue;
+            }
+            double dx = ex - ax;
+            double dy = ey - ay;
+            double bx = ax + dx/3;
+            double by = ay + dy/3;
+            double cx = (ax + ex)/2 + Math.sqrt(3)*(ay - ey)/6;
+            double cy = (ay + ey)/2 + Math.sqrt(3)*(ex - ax)/6;
+            double qx = ax + 2*dx/3;
+            double qy = ay + 2*dy/3;
+            top = push(top, qx, qy, ex, ey, 0, 0, d - 1);
+            top = push(top, cx, cy, qx, qy, 0, 0, d - 1);
+            top = push(top, bx, by, cx, cy, 0, 0, d - 1);
+            top = push(top, ax, ay, bx, by, 0, 0, d - 1);
+        }
+    }
+
+    private void begin(Kind kind, Consumer<GeometryBuffer> drain) {
+        this.kind = kind;
+        this.drain = drain;
+        size = 0;
+    }
+
+    private void finish() {
+        if (size > 0) drain.accept(this);
+        size = 0;
+        drain = null;
+    }
+
+    // True if the box cannot touch any pixel of the clip rectangle
+    private boolean culled(double minX, double minY, double maxX, double maxY) {
+        return maxX < clipMinX - 1 || minX > clipMaxX + 1 || maxY < clipMinY - 1 || minY > clipMaxY + 1;
+    }
+
+    private int push(int top, double x1, double y1, double x2, double y2, double x3, double y3, int depth) {
+        if (top + 7 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+        double[] s = stack;
+        s[top] = x1;
+        s[top + 1] = y1;
+        s[top + 2] = x2;
+        s[top + 3] = y2;
+        s[top + 4] = x3;
+        s[top + 5] = y3;
+        s[top + 6] = depth;
+        return top + 7;
+    }
+
+    private void emit(double x1, double y1, double x2, double y2, double x3, double y3) {
+        int i = size * kind.stride;
+        vertices[i] = x1;
+        vertices[i + 1] = y1;
+        vertices[i + 2] = x2;
+        vertices[i + 3] = y2;
+        if (kind == Kind.TRIANGLES) {
+            vertices[i + 4] = x3;
+            vertices[i + 5] = y3;
+        }
+        if (++size == CAPACITY) {
+            drain.accept(this);
+            size = 0;
+        }
+    }
+}
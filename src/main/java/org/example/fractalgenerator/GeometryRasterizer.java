@@ -0,0 +1,132 @@
+package org.example.fractalgenerator;
+
+import java.util.Arrays;
+
+// Draws the geometric fractals into one horizontal band of a width x height image without
+// JavaFX. The figures live in fractal coordinates and follow the same view transform as the
+// escape-time fractals; the primitives come from a GeometryBuffer clipped to the band
+public class GeometryRasterizer {
+    private static final double SQRT3 = Math.sqrt(3);
+    // Corners in fractal coordinates. In the default 1200x800 view the triangle is 50 pixels from
+    // the edges and the snowflake is 60% of the width across
+    private static final double[] SIERPINSKI = {0, -0.875, 1.375, 0.875, -1.375, 0.875};
+    private static final double[] KOCH = {-0.9, 0.3 * SQRT3, 0, -0.6 * SQRT3, 0.9, 0.3 * SQRT3};
+
+    private final int width;
+    private final GeometryBuffer geometry = new GeometryBuffer();
+    private Viewport view;
+    private int[] band;
+    private int bandY0;
+    private int bandRows;
+    private int color;
+
+    // Unzoomed, centered view
+    public GeometryRasterizer(int width, int height) {
+        this(new Viewport(width, height, 1, 0, 0));
+    }
+
+    public GeometryRasterizer(Viewport view) {
+        this.width = view.width();
+        this.view = view;
+    }
+
+    // Pan or zoom; the image size stays the same
+    public void setView(Viewport view) {
+        if (view.width() != width || view.height() != this.view.height()) {
+            throw new IllegalArgumentException("View size " + view.width() + "x" + view.height()
+                    + " does not match the rasterizer");
+        }
+        this.view = view;
+    }
+
+    // Sierpinski triangle. Every zoom doubling adds a level, so the detail on screen stays the same
+    public void sierpinski(int[] band, int y0, int rows, int depth, int argb, int background) {
+        begin(band, y0, rows, argb, background);
+        double[] c = SIERPINSKI;
+        geometry.sierpinski(view.toPixelX(c[0]), view.toPixelY(c[1]), view.toPixelX(c[2]), view.toPixelY(c[3]),
+                view.toPixelX(c[4]), view.toPixelY(c[5]), depth + extraLevels(2), this::draw);
+    }
+
+    // Koch snowflake. Every tripling of the zoom adds a level
+    public void koch(int[] band, int y0, int rows, int depth, int argb, int background) {
+        begin(band, y0, rows, argb, background);
+        double[] c = KOCH;
+        geometry.kochSnowflake(view.toPixelX(c[0]), view.toPixelY(c[1]), view.toPixelX(c[2]), view.toPixelY(c[3]),
+                view.toPixelX(c[4]), view.toPixelY(c[5]), depth + extraLevels(3), this::draw);
+    }
+
+    // Levels needed to keep shapes that shrink by scale per level as small on screen as unzoomed
+    private int extraLevels(int scale) {
+        return view.zoom() <= 1 ? 0 : (int) Math.ceil(Math.log(view.zoom()) / Math.log(scale));
+    }
+
+    private void begin(int[] band, int y0, int rows, int argb, int background) {
+        this.band = band;
+        this.bandY0 = y0;
+        this.bandRows = rows;
+        this.color = argb;
+        Arrays.fill(band, 0, rows * width, background);
+        geometry.setClip(0, y0, width, y0 + rows);
+    }
+
+    // Rasterize a full or final buffer of primitives
+    private void draw(GeometryBuffer buffer) {
+        double[] v = buffer.vertices();
+        int n = buffer.size();
+        if (buffer.kind() == GeometryBuffer.Kind.TRIANGLES) {
+            for (int i = 0; i < n * 6; i += 6) {
+                fillTriangle(v[i], v[i + 1], v[i + 2], v[i + 3], v[i + 4], v[i + 5]);
+            }
+        } else {
+            for (int i = 0; i < n * 4; i += 4) {
+                drawLine(v[i], v[i + 1], v[i + 2], v[i + 3]);
+            }
+        }
+    }
+
+    // Fill every pixel of the band whose center lies inside the triangle
+    void fillTriangle(double x1, double y1, double x2, double y2, double x3, double y3) {
+        int top = Math.max(bandY0, (int) Math.ceil(Math.min(y1, Math.min(y2, y3)) - 0.5));
+        int bottom = Math.min(bandY0 + bandRows - 1, (int) Math.floor(Math.max(y1, Math.max(y2, y3)) - 0.5));
+        for (int y = top; y <= bottom; y++) {
+            double cy = y + 0.5;
+            // Where the row crosses each edge
+            double left = Double.POSITIVE_INFINITY;
+            double right = Double.NEGATIVE_INFINITY;
+            if ((cy < y1) != (cy < y2)) {
+                double x = x1 + (cy - y1) * (x2 - x1) / (y2 - y1);
+                left = Math.min(left, x);
+                right = Math.max(right, x);
+            }
+            if ((cy < y2) != (cy < y3)) {
+                double x = x2 + (cy - y2) * (x3 - x2) / (y3 - y2);
+                left = Math.min(left, x);
+                right = Math.max(right, x);
+            }
+            if ((cy < y3) != (cy < y1)) {
+                double x = x3 + (cy - y3) * (x1 - x3) / (y1 - y3);
+                left = Math.min(left, x);
+                right = Math.max(right, x);
+            }
+            if (left > right) continue;
+            int from = Math.max(0, (int) Math.ceil(left - 0.5));
+            int to = Math.min(width - 1, (int) Math.floor(right - 0.5));
+            if (from <= to) Arrays.fill(band, (y - bandY0) * width + from, (y - bandY0) * width + to + 1, color);
+        }
+    }
+
+    // One pixel wide line, stepping along its longer axis
+    void drawLine(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        int steps = (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)));
+        for (int i = 0; i <= steps; i++) {
+            double t = steps == 0 ? 0 : (double) i / steps;
+            int x = (int) Math.floor(x1 + t * dx);
+            int y = (int) Math.floor(y1 + t * dy);
+            if (x >= 0 && x < width && y >= bandY0 && y < bandY0 + bandRows) {
+                band[(y - bandY0) * width + x] = color;
+            }
+        }
+    }
+}
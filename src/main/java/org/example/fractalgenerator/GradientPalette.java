@@ -0,0 +1,76 @@
+package org.example.fractalgenerator;
+
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Stop;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Linear gradient between color stops, read from a text file with one "offset color" pair per line,
+// e.g. "0.5 #ffaa00". Offsets run from 0 to 1 and blank lines and lines starting with # are ignored
+public record GradientPalette(String name, List<Stop> stops) implements Palette {
+
+    public GradientPalette {
+        if (stops.isEmpty()) throw new IllegalArgumentException("Palette " + name + " has no color stops");
+        stops = stops.stream().sorted(Comparator.comparingDouble(Stop::getOffset)).toList();
+    }
+
+    // Load a gradient file, named after the file without its extension
+    public static GradientPalette load(Path file) throws IOException {
+        String name = file.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        try (InputStream in = Files.newInputStream(file)) {
+            return load(name, in);
+        }
+    }
+
+    // Load a gradient bundled with the application
+    public static GradientPalette loadResource(String name, String resource) throws IOException {
+        try (InputStream in = GradientPalette.class.getResourceAsStream(resource)) {
+            if (in == null) throw new IOException("Missing palette resource " + resource);
+            return load(name, in);
+        }
+    }
+
+    private static GradientPalette load(String name, InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<Stop> stops = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+");
+            try {
+                stops.add(new Stop(Double.parseDouble(parts[0]), Color.web(parts[1])));
+            } catch (RuntimeException ex) {
+                throw new IOException("Bad color stop on line " + lineNumber + " of palette " + name + ": " + line);
+            }
+        }
+        return new GradientPalette(name, stops);
+    }
+
+    @Override
+    public Color escapeColor(int iterations, int maxIterations) {
+        double t = (double) (maxIterations - iterations) / maxIterations;
+        Stop previous = stops.getFirst();
+        if (t <= previous.getOffset()) return previous.getColor();
+        for (Stop stop : stops) {
+            if (t <= stop.getOffset()) {
+                double span = stop.getOffset() - previous.getOffset();
+                double f = span == 0 ? 1 : (t - previous.getOffset()) / span;
+                return previous.getColor().interpolate(stop.getColor(), f);
+            }
+            previous = stop;
+        }
+        return previous.getColor();
+    }
+}
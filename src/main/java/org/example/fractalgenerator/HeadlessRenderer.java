@@ -0,0 +1,191 @@
+package org.example.fractalgenerator;
+
+import javafx.scene.paint.Color;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Renders fractals straight to PNG or raw files without starting the JavaFX toolkit, one band of
+// rows at a time, so the image size is only limited by disk space. Meant for headless render nodes
+public class HeadlessRenderer {
+    private static final String USAGE = """
+            Usage: HeadlessRenderer --type mandelbrot|julia|sierpinski|koch|formula|NAME --out image.png|image.raw [options]
+              --formula F               formula for --type formula, e.g. "z^3 + c"; NAME is a bundled
+                                        formula instead, e.g. burningship, tricorn or multibrot3
+              --width N, --height N     image size in pixels (default 1200 x 800)
+              --iterations N            iteration count, or recursion depth for sierpinski/koch; auto
+                                        picks an iteration count from the zoom
+              --zoom Z                  zoom factor (default 1); the view spans 3 x 2 units at zoom 1
+              --center X,Y              fractal coordinate at the image center (default 0,0), with as many
+                                        digits as needed; from zoom 1e10 Mandelbrot uses perturbation
+              --julia CX,CY             Julia constant (default -0.7,0.27015)
+              --accelerate MODE         Mandelbrot interior shortcuts: off (default), exact, or subdivide,
+                                        which is faster still but may fill in sub-pixel details
+              --palette NAME            monochrome, rainbow, custom, fire, ocean or a .gradient file
+              --color C                 custom palette color and geometric fractal color (default black)
+              --inside C                inside color of Mandelbrot/Julia sets (default black)
+              --coloring MODE           plain (default), smooth, equalized or smooth-equalized: blend
+                                        between escape counts and/or spread them evenly over the palette
+              --background C            background of geometric fractals (default white)
+              --workers HOST:PORT,...   compute Mandelbrot/Julia/formula tiles on RenderWorker processes
+              --tile-timeout S          seconds a worker may stay silent before its tile is given to
+                                        another (default 30)
+            Files not ending in .png get the raw memory-mapped format described in RawImageWriter.""";
+
+    public static void main(String[] args) {
+        try {
+            Map<String, String> options = parseOptions(args);
+            long start = System.nanoTime();
+            render(options);
+            System.out.printf("Wrote %s in %.1f s%n", options.get("out"), (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Failed to write image: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Render the image described by parsed command line options
+    public static void render(Map<String, String> options) throws IOException {
+        String type = required(options, "type");
+        Path out = Path.of(required(options, "out"));
+        int width = Integer.parseInt(options.getOrDefault("width", "1200"));
+        int height = Integer.parseInt(options.getOrDefault("height", "800"));
+        Color color = Color.web(options.getOrDefault("color", "black"));
+        int argb = Palette.toArgbPre(color);
+
+        switch (type) {
+            case "sierpinski":
+            case "koch":
+                int depth = Integer.parseInt(options.getOrDefault("iterations", "6"));
+                int background = Palette.toArgbPre(Color.web(options.getOrDefault("background", "white")));
+                double[] geometryCenter = pair(options.getOrDefault("center", "0,0"));
+                GeometryRasterizer rasterizer = new GeometryRasterizer(new Viewport(width, height,
+                        Double.parseDouble(options.getOrDefault("zoom", "1")), -geometryCenter[0], -geometryCenter[1]));
+                writeImage(type.equals("koch")
+                        ? (y0, rows, band) -> rasterizer.koch(band, y0, rows, depth, argb, background)
+                        : (y0, rows, band) -> rasterizer.sierpinski(band, y0, rows, depth, argb, background),
+                        width, height, out);
+                break;
+            default:
+                RenderJob job = RenderJob.fromOptions(options);
+                int maxIterations = job.params().maxIterations();
+                Palette palette = palette(options.getOrDefault("palette", "rainbow"), color);
+                int[] colors = palette.buildTable(maxIterations, Color.web(options.getOrDefault("inside", "black")));
+                ColoringPass coloring = new ColoringPass(colors, options.getOrDefault("coloring", "plain").endsWith("equalized"));
+                EscapeTimeEngine engine = new EscapeTimeEngine();
+                try {
+                    if (options.containsKey("workers")) {
+                        renderOnWorkers(options, job, engine, coloring, out);
+                    } else {
+                        writeImage(ImageExporter.escapeTime(engine, job.view(), job.params(), coloring), width, height, out);
+                    }
+                } finally {
+                    engine.shutdown();
+                }
+                break;
+        }
+    }
+
+    // Export an image whose counts come from render workers; the local engine only computes the
+    // preview for equalizing
+    private static void renderOnWorkers(Map<String, String> options, RenderJob job, EscapeTimeEngine engine,
+                                        ColoringPass coloring, Path out) throws IOException {
+        Map<String, String> jobOptions = new HashMap<>(options);
+        jobOptions.remove("out");
+        jobOptions.remove("workers");
+        jobOptions.remove("tile-timeout");
+        int timeout = (int) (Double.parseDouble(options.getOrDefault("tile-timeout", "30")) * 1000);
+        try (TileCoordinator coordinator = new TileCoordinator(TileCoordinator.parseWorkers(options.get("workers")),
+                jobOptions, job, timeout)) {
+            writeImage(ImageExporter.escapeTime(engine, job.view(), job.params(), coloring, coordinator),
+                    job.view().width(), job.view().height(), out);
+            System.out.println(coordinator.summary());
+        }
+    }
+
+    // Export an image, printing progress every tenth of the way
+    private static void writeImage(BandSource source, int width, int height, Path file) throws IOException {
+        int[] reported = {0};
+        ImageExporter.export(source, width, height, file, done -> {
+            int tenths = (int) (done * 10);
+            if (tenths > reported[0]) {
+                reported[0] = tenths;
+                System.out.printf("%d%%%n", tenths * 10);
+            }
+        });
+    }
+
+    // Palette by name as used on the command line
+    static Palette palette(String name, Color customColor) throws IOException {
+        switch (name.toLowerCase()) {
+            case "monochrome": return new MonochromePalette();
+            case "rainbow": return new RainbowPalette();
+            case "custom": return new CustomPalette(customColor);
+            case "fire": return GradientPalette.loadResource("Fire", "palettes/fire.gradient");
+            case "ocean": return GradientPalette.loadResource("Ocean", "palettes/ocean.gradient");
+            default: return GradientPalette.load(Path.of(name));
+        }
+    }
+
+    // Kernel of an escape-time --type: mandelbrot, julia, formula for the --formula option, or the
+    // name of a bundled formula such as burningship
+    static FractalKernel escapeTimeKernel(String type, Map<String, String> options) throws IOException {
+        switch (type) {
+            case "mandelbrot": return mandelbrotKernel(options.getOrDefault("accelerate", "off"));
+            case "julia": return new JuliaKernel();
+            case "formula": return FormulaKernel.create("Formula", required(options, "formula"));
+            default:
+                FractalKernel kernel = FractalRegistry.load().find(type);
+                if (kernel == null) throw new IllegalArgumentException("Unknown fractal type: " + type);
+                return kernel;
+        }
+    }
+
+    // Mandelbrot kernel for the --accelerate mode
+    static FractalKernel mandelbrotKernel(String mode) {
+        switch (mode) {
+            case "off": return new MandelbrotKernel();
+            case "exact": return new AcceleratedMandelbrotKernel(false);
+            case "subdivide": return new AcceleratedMandelbrotKernel(true);
+            default: throw new IllegalArgumentException("Unknown --accelerate mode: " + mode);
+        }
+    }
+
+    // Turn "--name value" pairs into a map
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value but got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) throw new IllegalArgumentException("Missing --" + name);
+        return value;
+    }
+
+    static BigDecimal[] decimalPair(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 2) throw new IllegalArgumentException("Expected X,Y but got: " + value);
+        return new BigDecimal[]{new BigDecimal(parts[0].strip()), new BigDecimal(parts[1].strip())};
+    }
+
+    static double[] pair(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 2) throw new IllegalArgumentException("Expected X,Y but got: " + value);
+        return new double[]{Double.parseDouble(parts[0].strip()), Double.parseDouble(parts[1].strip())};
+    }
+}
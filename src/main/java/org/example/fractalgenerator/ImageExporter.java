@@ -0,0 +1,134 @@
+package org.example.fractalgenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.DoubleConsumer;
+
+// Renders images of any size band by band into a PNG or raw file. Two band buffers are used so
+// the next band is computed while the previous one is being encoded, and memory use depends
+// only on the image width
+public class ImageExporter {
+    // Computes the iteration counts of rows [y0, y0 + rows) across the full image width, and their
+    // fractional escape values into smooth unless it is null
+    @FunctionalInterface
+    public interface CountSource {
+        void renderRows(int y0, int rows, int[] counts, float[] smooth) throws IOException;
+    }
+
+    // Upper bound on the pixels held per band
+    private static final int BAND_PIXELS = 1 << 22;
+
+    // Rows per band so that a band stays within BAND_PIXELS
+    public static int bandRows(int width) {
+        return Math.max(1, Math.min(256, BAND_PIXELS / width));
+    }
+
+    // PNG for .png files, otherwise the raw memory-mapped format
+    public static ImageSink openSink(Path file, int width, int height) throws IOException {
+        if (file.getFileName().toString().toLowerCase().endsWith(".png")) {
+            return new PngStreamWriter(new BufferedOutputStream(Files.newOutputStream(file)), width, height);
+        }
+        return new RawImageWriter(file, width, height);
+    }
+
+    // Render the image into a file, reporting the finished fraction as it goes
+    public static void export(BandSource source, int width, int height, Path file, DoubleConsumer progress)
+            throws IOException {
+        try (ImageSink sink = openSink(file, width, height)) {
+            export(source, width, height, sink, progress);
+        }
+    }
+
+    // Render the image into a sink. Stops with InterruptedIOException if the thread is interrupted
+    public static void export(BandSource source, int width, int height, ImageSink sink, DoubleConsumer progress)
+            throws IOException {
+        int bandRows = bandRows(width);
+        int[][] bands = {new int[width * bandRows], new int[width * bandRows]};
+        ExecutorService encoder = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "fractal-export-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<?> pending = null;
+            int index = 0;
+            for (int y = 0; y < height; y += bandRows) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Export cancelled");
+                int rows = Math.min(bandRows, height - y);
+                int[] band = bands[index];
+                source.renderBand(y, rows, band);
+                // The other buffer is free again once its band is encoded
+                await(pending);
+                pending = encoder.submit(() -> {
+                    sink.writeRows(band, 0, rows);
+                    return null;
+                });
+                index ^= 1;
+                progress.accept((double) (y + rows) / height);
+            }
+            await(pending);
+        } finally {
+            encoder.shutdownNow();
+        }
+    }
+
+    // Iterate a band on the engine and color it through the lookup table
+    public static BandSource escapeTime(EscapeTimeEngine engine, Viewport view, RenderParams params, int[] colors) {
+        return escapeTime(engine, view, params, new ColoringPass(colors, false));
+    }
+
+    // Iterate a band on the engine and color it in a coloring pass. Bands are equalized by the
+    // histogram of a small preview of the whole view, so they all share one mapping
+    public static BandSource escapeTime(EscapeTimeEngine engine, Viewport view, RenderParams params,
+                                        ColoringPass coloring) {
+        int width = view.width();
+        return escapeTime(engine, view, params, coloring,
+                (y0, rows, counts, smooth) -> engine.renderRegion(view, params, 0, y0, width, rows, counts, smooth, 0, width));
+    }
+
+    // Color bands whose counts come from somewhere else, such as render workers. The engine only
+    // computes the preview for equalizing
+    public static BandSource escapeTime(EscapeTimeEngine engine, Viewport view, RenderParams params,
+                                        ColoringPass coloring, CountSource source) {
+        if (coloring.equalizes()) coloring = coloring.withHistogramOf(preview(engine, view, params));
+        ColoringPass pass = coloring;
+        int width = view.width();
+        int[] counts = new int[width * bandRows(width)];
+        float[] smooth = params.smooth() ? new float[counts.length] : null;
+        return (y0, rows, argb) -> {
+            source.renderRows(y0, rows, counts, smooth);
+            pass.color(counts, smooth, width, 1, params.maxIterations(), argb, width, rows);
+        };
+    }
+
+    // Counts of the view scaled down to at most 256 pixels across
+    private static int[] preview(EscapeTimeEngine engine, Viewport view, RenderParams params) {
+        double scale = Math.min(1, 256.0 / view.width());
+        int width = Math.max(1, (int) (view.width() * scale));
+        int height = Math.max(1, (int) (view.height() * scale));
+        Viewport small = new Viewport(width, height, view.zoom(), view.offsetX(), view.offsetY());
+        int[] counts = new int[width * height];
+        engine.renderRegion(small, params, 0, 0, width, height, counts, 0, width);
+        return counts;
+    }
+
+    static void await(Future<?> pending) throws IOException {
+        if (pending == null) return;
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        }
+    }
+}
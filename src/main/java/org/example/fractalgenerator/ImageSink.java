@@ -0,0 +1,11 @@
+package org.example.fractalgenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Destination for an image that arrives one band of rows at a time, top to bottom
+public interface ImageSink extends Closeable {
+
+    // Append rows of premultiplied ARGB pixels, one image row after the other starting at offset
+    void writeRows(int[] argbPre, int offset, int rows) throws IOException;
+}
@@ -0,0 +1,91 @@
+package org.example.fractalgenerator;
+
+// Picks the iteration count for escape-time fractals instead of the user. Deeper views need more
+// iterations before boundary points escape, so the zoom gives a floor; the counts of the last
+// finished frame raise it when many pixels only escaped near the limit.
+// Also estimates the cost of a frame at a lower cap, for time-boxed rendering
+public class IterationBudget {
+    public static final int MIN_ITERATIONS = 100;
+    public static final int MAX_ITERATIONS = 1 << 20;
+    // Share of the escaping pixels whose count decides the estimate; the rest are treated as noise
+    private static final double ESCAPE_QUANTILE = 0.999;
+    // Histogram size; deeper frames share a bin between neighbouring counts
+    private static final int BINS = 4096;
+
+    // Escape count at ESCAPE_QUANTILE in the last observed frame, 0 before the first
+    private volatile int lateEscape;
+
+    // Rule of thumb: 200 more iterations per decade of zoom
+    public static int fromZoom(double zoom) {
+        double decades = Math.max(0, Math.log10(zoom));
+        return (int) Math.min(MAX_ITERATIONS, MIN_ITERATIONS + 200 * decades);
+    }
+
+    // Iteration count for the next frame at this zoom: the zoom floor, or twice the count late
+    // escapers needed last frame if that is more. Counts at the old limit double it at most
+    public int next(double zoom) {
+        return (int) Math.min(MAX_ITERATIONS, Math.max(fromZoom(zoom), 2L * lateEscape));
+    }
+
+    // Remember the escape counts of a finished frame computed with maxIterations
+    public void observe(int[] counts, int maxIterations) {
+        Histogram histogram = Histogram.of(counts, maxIterations);
+        long escaped = counts.length - histogram.inside();
+        if (escaped == 0) return;
+        long wanted = (long) Math.ceil(escaped * ESCAPE_QUANTILE);
+        long seen = 0;
+        for (int bin = 0; bin < histogram.pixels().length; bin++) {
+            seen += histogram.pixels()[bin];
+            if (seen >= wanted) {
+                // The highest count of the bin, so wide bins only ever raise the estimate
+                lateEscape = Math.min((bin + 1) * histogram.width(), maxIterations) - 1;
+                return;
+            }
+        }
+    }
+
+    // The highest cap up to maxIterations at which a frame with these counts would take at most
+    // the given number of iterations, capped pixels stopping at the cap. Never below MIN_ITERATIONS
+    public static int affordableCap(int[] counts, int maxIterations, double iterations) {
+        Histogram histogram = Histogram.of(counts, maxIterations);
+        int width = histogram.width();
+        // cost(cap) = sum of counts below cap + cap * pixels at or above it, exact at the bin edges
+        long below = 0;
+        long atOrAbove = counts.length;
+        for (int bin = 0; bin < histogram.pixels().length; bin++) {
+            int top = Math.min((bin + 1) * width, maxIterations);
+            long nextBelow = below + histogram.sums()[bin];
+            long nextAtOrAbove = atOrAbove - histogram.pixels()[bin];
+            if (nextBelow + (double) top * nextAtOrAbove > iterations) {
+                // Within this bin, counting its pixels as reaching the cap, which can only lower it
+                int cap = (int) Math.max(bin * width, Math.min(top - 1, Math.floor((iterations - below) / atOrAbove)));
+                return Math.max(Math.min(MIN_ITERATIONS, maxIterations), cap);
+            }
+            below = nextBelow;
+            atOrAbove = nextAtOrAbove;
+        }
+        return maxIterations;
+    }
+
+    // Escaped pixels and the sum of their counts per bin of width counts, and the pixels that
+    // reached maxIterations. Counts above it, left from a deeper frame, count as reaching it.
+    // At most BINS bins, so deep frames do not need a histogram entry per iteration
+    private record Histogram(int width, int[] pixels, long[] sums, long inside) {
+        static Histogram of(int[] counts, int maxIterations) {
+            int width = Math.max(1, (maxIterations + BINS - 1) / BINS);
+            int bins = (maxIterations + width - 1) / width;
+            int[] pixels = new int[bins];
+            long[] sums = new long[bins];
+            long inside = 0;
+            for (int count : counts) {
+                if (count >= maxIterations) {
+                    inside++;
+                } else {
+                    pixels[count / width]++;
+                    sums[count / width] += count;
+                }
+            }
+            return new Histogram(width, pixels, sums, inside);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.fractalgenerator;
+
+// Per-pixel iteration counts of a frame, row-major. Remembers which view and parameters the
+// counts belong to once they are complete, so the frame can be recolored without iterating again
+public class IterationBuffer {
+    private final int width;
+    private final int height;
+    private final int[] counts;
+    // Fractional escape values, allocated the first time a smooth frame is rendered
+    private float[] smooth;
+    // Set only while counts hold a finished full resolution frame
+    private Viewport view;
+    private RenderParams params;
+
+    public IterationBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.counts = new int[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getCounts() {
+        return counts;
+    }
+
+    // Fractional escape values alongside the counts; only meaningful for smooth frames
+    public float[] getSmooth() {
+        if (smooth == null) smooth = new float[counts.length];
+        return smooth;
+    }
+
+    // View of the finished frame held in counts, or null
+    public Viewport getView() {
+        return view;
+    }
+
+    // Parameters of the finished frame held in counts, or null
+    public RenderParams getParams() {
+        return params;
+    }
+
+    // True if the buffer holds the finished frame for this view and these parameters
+    public boolean holds(Viewport view, RenderParams params) {
+        return view.equals(this.view) && params.equals(this.params);
+    }
+
+    // Record that counts now hold the finished frame for this view and these parameters
+    public void markComplete(Viewport view, RenderParams params) {
+        this.view = view;
+        this.params = params;
+    }
+
+    // Move the counts, and the fractional escape values if there are any, so that pixel (x, y)
+    // gets what pixel (x + dx, y + dy) had. Pixels that come in from outside the old frame keep
+    // stale values and have to be recomputed
+    public void shift(int dx, int dy) {
+        shift(counts, dx, dy);
+        if (smooth != null) shift(smooth, dx, dy);
+    }
+
+    private void shift(Object array, int dx, int dy) {
+        int rowLength = width - Math.abs(dx);
+        int srcX = Math.max(dx, 0);
+        int dstX = Math.max(-dx, 0);
+        if (dy >= 0) {
+            for (int y = 0; y < height - dy; y++) {
+                System.arraycopy(array, (y + dy) * width + srcX, array, y * width + dstX, rowLength);
+            }
+        } else {
+            for (int y = height - 1; y >= -dy; y--) {
+                System.arraycopy(array, (y + dy) * width + srcX, array, y * width + dstX, rowLength);
+            }
+        }
+    }
+
+    // Forget the finished frame before counts are overwritten
+    public void invalidate() {
+        view = null;
+        params = null;
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.fractalgenerator;
+
+// z = z^2 + c with c fixed to the Julia constant
+public class JuliaKernel extends MandelbrotKernel {
+
+    @Override
+    public boolean julia() {
+        return true;
+    }
+
+    @Override
+    public String name() {
+        return "Julia Set";
+    }
+}
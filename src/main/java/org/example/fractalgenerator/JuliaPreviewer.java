@@ -0,0 +1,109 @@
+package org.example.fractalgenerator;
+
+import javafx.application.Platform;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Renders small Julia set previews for a batch of constants at once, one preview per task on a
+// pool with a thread per core. Each request replaces the one before: its queued previews are
+// dropped, so the previews keep up with the mouse instead of working through every position it
+// passed. Previews already being rendered are finished, so a mouse that never stops still sees
+// them update, but a preview never replaces one from a newer request
+public class JuliaPreviewer {
+    private static final FractalKernel JULIA = new JuliaKernel();
+
+    // Receives each finished preview on the FX thread
+    @FunctionalInterface
+    public interface PreviewListener {
+        // index is the position of the preview's constant (cx, cy) in the request
+        void previewReady(int index, double cx, double cy, WritableImage image);
+    }
+
+    private final AtomicLong generation = new AtomicLong();
+    // Requests up to this generation were cancelled
+    private final AtomicLong cancelled = new AtomicLong();
+    private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final ThreadPoolExecutor executor;
+    // Only touched by the FX thread: the image of each index and the request it shows
+    private WritableImage[] images = new WritableImage[0];
+    private long[] shown = new long[0];
+
+    public JuliaPreviewer() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue, r -> {
+            Thread thread = new Thread(r, "fractal-julia-preview-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Render a width x height preview of the whole Julia set for each constant (cx[i], cy[i]),
+    // colored through colors, a lookup table for maxIterations, and with smooth coloring if asked
+    public void request(double[] cx, double[] cy, int width, int height, int maxIterations, int[] colors,
+                        boolean smooth, PreviewListener listener) {
+        long gen = generation.incrementAndGet();
+        queue.clear();
+        ColoringPass coloring = new ColoringPass(colors, false);
+        Viewport view = new Viewport(width, height, 1, 0, 0);
+        for (int i = 0; i < cx.length; i++) {
+            int index = i;
+            double x = cx[i];
+            double y = cy[i];
+            executor.execute(() -> render(gen, index, view, x, y, maxIterations, coloring, smooth, listener));
+        }
+    }
+
+    // Drop every preview not yet finished
+    public void cancel() {
+        cancelled.set(generation.incrementAndGet());
+        queue.clear();
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void render(long gen, int index, Viewport view, double cx, double cy, int maxIterations,
+                        ColoringPass coloring, boolean smooth, PreviewListener listener) {
+        int width = view.width();
+        int height = view.height();
+        int[] counts = new int[width * height];
+        float[] fractions = smooth ? new float[counts.length] : null;
+        for (int y = 0; y < height; y++) {
+            if (gen <= cancelled.get()) return;
+            double zy = view.toFractalY(y);
+            for (int x = 0; x < width; x++) {
+                double zx = view.toFractalX(x);
+                int i = y * width + x;
+                counts[i] = smooth
+                        ? JULIA.iterate(zx, zy, cx, cy, maxIterations, fractions, i)
+                        : JULIA.iterate(zx, zy, cx, cy, maxIterations);
+            }
+        }
+        int[] pixels = new int[counts.length];
+        coloring.color(counts, fractions, width, 1, maxIterations, pixels, width, height);
+        Platform.runLater(() -> {
+            if (gen <= cancelled.get() || (index < shown.length && gen < shown[index])) return;
+            if (images.length <= index) {
+                images = Arrays.copyOf(images, index + 1);
+                shown = Arrays.copyOf(shown, index + 1);
+            }
+            shown[index] = gen;
+            WritableImage image = images[index];
+            if (image == null || image.getWidth() != width || image.getHeight() != height) {
+                image = images[index] = new WritableImage(width, height);
+            }
+            image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), pixels, 0, width);
+            listener.previewReady(index, cx, cy, image);
+        });
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.fractalgenerator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// A view of an animation at a point in time. Keyframe files hold one "time centerX,centerY zoom"
+// line per keyframe, optionally followed by the Julia constant "juliaCX,juliaCY"; time is in
+// seconds, and blank lines and lines starting with # are ignored
+public record Keyframe(double time, BigDecimal centerX, BigDecimal centerY, double zoom,
+                       double juliaCX, double juliaCY) {
+
+    public Keyframe {
+        if (!(zoom > 0)) throw new IllegalArgumentException("Keyframe zoom must be positive: " + zoom);
+    }
+
+    public static List<Keyframe> load(Path file) throws IOException {
+        List<Keyframe> keyframes = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                try {
+                    keyframes.add(parse(line));
+                } catch (RuntimeException ex) {
+                    throw new IOException("Bad keyframe on line " + lineNumber + " of " + file + ": " + line);
+                }
+            }
+        }
+        for (int i = 1; i < keyframes.size(); i++) {
+            if (keyframes.get(i).time() <= keyframes.get(i - 1).time()) {
+                throw new IOException("Keyframe times must increase: " + keyframes.get(i).time());
+            }
+        }
+        if (keyframes.isEmpty()) throw new IOException("No keyframes in " + file);
+        return keyframes;
+    }
+
+    public static void save(List<Keyframe> keyframes, Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("# time centerX,centerY zoom juliaCX,juliaCY\n");
+            for (Keyframe keyframe : keyframes) {
+                writer.write(keyframe.time() + " " + keyframe.centerX().toPlainString() + ","
+                        + keyframe.centerY().toPlainString() + " " + keyframe.zoom() + " "
+                        + keyframe.juliaCX() + "," + keyframe.juliaCY() + "\n");
+            }
+        }
+    }
+
+    private static Keyframe parse(String line) {
+        String[] parts = line.split("\\s+");
+        String[] center = parts[1].split(",");
+        String[] julia = parts.length > 3 ? parts[3].split(",") : new String[]{"0", "0"};
+        return new Keyframe(Double.parseDouble(parts[0]), new BigDecimal(center[0]), new BigDecimal(center[1]),
+                Double.parseDouble(parts[2]), Double.parseDouble(julia[0]), Double.parseDouble(julia[1]));
+    }
+
+    // The view at a time between the first and last keyframe. Zoom changes by a constant factor per
+    // second and the center moves at a constant speed on screen rather than in fractal units, so a
+    // zoom towards a point keeps it still; the Julia constant moves linearly
+    public static Keyframe at(List<Keyframe> keyframes, double time) {
+        Keyframe a = keyframes.getFirst();
+        if (time <= a.time()) return a;
+        for (Keyframe b : keyframes) {
+            if (time < b.time()) {
+                double s = (time - a.time()) / (b.time() - a.time());
+                double zoom = a.zoom() * Math.pow(b.zoom() / a.zoom(), s);
+                // Share of the way from a to b in screen widths, which shrink as 1/zoom
+                double w = a.zoom() == b.zoom() ? s : (1 / zoom - 1 / a.zoom()) / (1 / b.zoom() - 1 / a.zoom());
+                MathContext precision = new MathContext(20 + (int) Math.ceil(Math.log10(Math.max(zoom, 1))));
+                BigDecimal weight = new BigDecimal(w);
+                return new Keyframe(time,
+                        a.centerX().add(b.centerX().subtract(a.centerX()).multiply(weight, precision), precision),
+                        a.centerY().add(b.centerY().subtract(a.centerY()).multiply(weight, precision), precision),
+                        zoom, a.juliaCX() + (b.juliaCX() - a.juliaCX()) * s, a.juliaCY() + (b.juliaCY() - a.juliaCY()) * s);
+            }
+            a = b;
+        }
+        return keyframes.getLast();
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.fractalgenerator;
+
+// z = z^2 + c with c taken from the pixel
+public class MandelbrotKernel implements FractalKernel {
+
+    @Override
+    public int iterate(double zx, double zy, double cx, double cy, int maxIterations) {
+        int iter = maxIterations;
+        while (zx*zx + zy*zy < 4 && iter > 0) {
+            double tmp = zx*zx - zy*zy + cx;
+            zy = 2*zx*zy + cy;
+            zx = tmp;
+            iter--;
+        }
+        return maxIterations - iter;
+    }
+
+    @Override
+    public int iterate(double zx, double zy, double cx, double cy, int maxIterations, float[] smooth, int index) {
+        int iter = maxIterations;
+        while (zx*zx + zy*zy < 4 && iter > 0) {
+            double tmp = zx*zx - zy*zy + cx;
+            zy = 2*zx*zy + cy;
+            zx = tmp;
+            iter--;
+        }
+        int count = maxIterations - iter;
+        smooth[index] = count > 0 && count < maxIterations ? smooth(count, zx, zy, cx, cy) : count;
+        return count;
+    }
+
+    // Normalized iteration count n + 1 - log2(ln|z|) of a point that escaped after count
+    // iterations at z. Two more iterations first take |z| far enough out for it to be continuous
+    static float smooth(int count, double zx, double zy, double cx, double cy) {
+        for (int i = 0; i < 2; i++) {
+            double tmp = zx*zx - zy*zy + cx;
+            zy = 2*zx*zy + cy;
+            zx = tmp;
+        }
+        double logModulus = 0.5 * Math.log(zx*zx + zy*zy);
+        return (float) (count + 3 - Math.log(logModulus) / Math.log(2));
+    }
+
+    @Override
+    public boolean julia() {
+        return false;
+    }
+
+    @Override
+    public String name() {
+        return "Mandelbrot Set";
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.fractalgenerator;
+
+import javafx.scene.paint.Color;
+
+// Every escaped pixel is white
+public record MonochromePalette() implements Palette {
+
+    @Override
+    public String name() {
+        return "Monochrome";
+    }
+
+    @Override
+    public Color escapeColor(int iterations, int maxIterations) {
+        return Color.WHITE;
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.fractalgenerator;
+
+import javafx.scene.paint.Color;
+
+// Colors escape-time pixels through a lookup table indexed by iteration count
+public interface Palette {
+
+    // Name shown in the color scheme choice box
+    String name();
+
+    // Color of a pixel that escaped after the given number of iterations
+    Color escapeColor(int iterations, int maxIterations);
+
+    // Premultiplied ARGB pixel for every iteration count from 0 to maxIterations. Pixels that
+    // escape before the first iteration get the inside color
+    default int[] buildTable(int maxIterations, Color insideColor) {
+        int[] table = new int[maxIterations + 1];
+        table[0] = toArgbPre(insideColor);
+        for (int n = 1; n <= maxIterations; n++) {
+            table[n] = toArgbPre(escapeColor(n, maxIterations));
+        }
+        return table;
+    }
+
+    // Same rounding as PixelWriter.setColor followed by the image's own premultiplication
+    static int toArgbPre(Color color) {
+        int a = (int) Math.round(color.getOpacity() * 255.0);
+        int r = (int) Math.round(color.getRed() * 255.0);
+        int g = (int) Math.round(color.getGreen() * 255.0);
+        int b = (int) Math.round(color.getBlue() * 255.0);
+        if (a < 0xff) {
+            r = (r * a + 127) / 255;
+            g = (g * a + 127) / 255;
+            b = (b * a + 127) / 255;
+        }
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+}
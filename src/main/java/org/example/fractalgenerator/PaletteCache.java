@@ -0,0 +1,24 @@
+package org.example.fractalgenerator;
+
+import javafx.scene.paint.Color;
+
+// Keeps the lookup table of the last palette inputs, so a redraw with the same
+// palette, iteration count and inside color reuses it instead of rebuilding it
+public class PaletteCache {
+
+    private record Key(Palette palette, int maxIterations, Color insideColor) {
+    }
+
+    private Key key;
+    private int[] table;
+
+    // The returned table is shared and must not be modified
+    public int[] lookupTable(Palette palette, int maxIterations, Color insideColor) {
+        Key wanted = new Key(palette, maxIterations, insideColor);
+        if (!wanted.equals(key)) {
+            table = palette.buildTable(maxIterations, insideColor);
+            key = wanted;
+        }
+        return table;
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.fractalgenerator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+// Deep zoom into the Mandelbrot set. One reference orbit is computed at the view center with as
+// many digits as the zoom needs, and every pixel only iterates its small difference from that orbit
+// in doubles: dz' = 2*Z*dz + dz^2 + dc. The pixel coordinates the engine passes in are that
+// difference dc, so the Viewport offsets must be relative to the reference point.
+// When |Z + dz| drops below |dz|, the difference is no longer precise enough (a glitch). The pixel
+// then rebases onto the start of the reference orbit, which is also done when the orbit runs out
+public class PerturbationKernel implements FractalKernel {
+    // Zoom from which plain doubles start to run out of digits for the pixel coordinates
+    public static final double DEEP_ZOOM = 1e10;
+
+    private final BigDecimal referenceX, referenceY;
+    private final double zoom;
+    private final MathContext precision;
+    private final int maxIterations;
+    // Reference orbit Z_0 = 0, Z_n+1 = Z_n^2 + C rounded to doubles, up to where it escapes
+    private volatile double[] orbitX, orbitY;
+
+    public PerturbationKernel(BigDecimal referenceX, BigDecimal referenceY, double zoom, int maxIterations) {
+        this.referenceX = referenceX;
+        this.referenceY = referenceY;
+        this.zoom = zoom;
+        this.maxIterations = maxIterations;
+        // Enough digits to tell neighbouring pixels apart, plus a safety margin for rounding in the orbit
+        precision = new MathContext(Math.max(20, (int) Math.ceil(Math.log10(Math.max(zoom, 1))) + 20));
+    }
+
+    // True if this kernel was made for the same reference point, zoom and iteration count
+    public boolean isFor(BigDecimal referenceX, BigDecimal referenceY, double zoom, int maxIterations) {
+        return this.referenceX.equals(referenceX) && this.referenceY.equals(referenceY)
+                && this.zoom == zoom && this.maxIterations == maxIterations;
+    }
+
+    @Override
+    public int iterate(double zx, double zy, double cx, double cy, int maxIterations) {
+        return iterate(zx, zy, cx, cy, maxIterations, null, 0);
+    }
+
+    // Smooth values use the full z = Z + dz at escape and c = C + dc, with C = Z_1
+    @Override
+    public int iterate(double zx, double zy, double cx, double cy, int maxIterations, float[] smooth, int index) {
+        double[] refX = orbitX;
+        double[] refY = orbitY;
+        if (refX == null) {
+            computeOrbit();
+            refX = orbitX;
+            refY = orbitY;
+        }
+        int last = refX.length - 1;
+        // Z_1 + dz = C + dc is the starting point of the plain loop
+        int m = 1;
+        double dx = cx;
+        double dy = cy;
+        int iter = maxIterations;
+        while (iter > 0) {
+            double x = refX[m] + dx;
+            double y = refY[m] + dy;
+            double r = x*x + y*y;
+            if (r >= 4) {
+                if (smooth != null) {
+                    int count = maxIterations - iter;
+                    smooth[index] = count > 0 && last > 0
+                            ? MandelbrotKernel.smooth(count, x, y, refX[1] + cx, refY[1] + cy)
+                            : count;
+                }
+                return maxIterations - iter;
+            }
+            if (m == last || r < dx*dx + dy*dy) {
+                dx = x;
+                dy = y;
+                m = 0;
+            }
+            double zrx = refX[m];
+            double zry = refY[m];
+            double tmp = 2*(zrx*dx - zry*dy) + dx*dx - dy*dy + cx;
+            dy = 2*(zrx*dy + zry*dx) + 2*dx*dy + cy;
+            dx = tmp;
+            m++;
+            iter--;
+        }
+        if (smooth != null) smooth[index] = maxIterations;
+        return maxIterations;
+    }
+
+    // Iterate the reference point in BigDecimal, once, the first time a pixel needs it
+    private synchronized void computeOrbit() {
+        if (orbitX != null) return;
+        double[] x = new double[maxIterations + 2];
+        double[] y = new double[maxIterations + 2];
+        BigDecimal zx = BigDecimal.ZERO;
+        BigDecimal zy = BigDecimal.ZERO;
+        int n = 0;
+        while (n < x.length - 1) {
+            BigDecimal xx = zx.multiply(zx, precision);
+            BigDecimal yy = zy.multiply(zy, precision);
+            BigDecimal xy = zx.multiply(zy, precision);
+            zx = xx.subtract(yy).add(referenceX, precision);
+            zy = xy.add(xy).add(referenceY, precision);
+            n++;
+            x[n] = zx.doubleValue();
+            y[n] = zy.doubleValue();
+            if (x[n]*x[n] + y[n]*y[n] >= 4) break;
+        }
+        orbitY = Arrays.copyOf(y, n + 1);
+        orbitX = Arrays.copyOf(x, n + 1);
+    }
+
+    @Override
+    public boolean julia() {
+        return false;
+    }
+
+    // The zoom sets the precision of the reference orbit, which can change the last few counts
+    @Override
+    public String identity() {
+        return "Mandelbrot Set at " + referenceX.toPlainString() + "," + referenceY.toPlainString() + " zoom " + zoom;
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.fractalgenerator;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// Encodes a PNG image row by row as the rows are produced, so images of any size are written
+// with a constant amount of memory. Rows are 8-bit RGBA with the Sub filter
+public class PngStreamWriter implements ImageSink {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int IDAT_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    // Native zlib state, released in close
+    private final Deflater compressor;
+    private final DeflaterOutputStream deflater;
+    private final byte[] row;
+    private int rowsWritten;
+
+    public PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Image size must be positive");
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + width * 4];
+
+        this.out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;  // bits per channel
+        header[9] = 6;  // RGBA
+        writeChunk("IHDR", header, header.length);
+        compressor = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        deflater = new DeflaterOutputStream(new IdatStream(), compressor, IDAT_SIZE);
+    }
+
+    @Override
+    public void writeRows(int[] argbPre, int offset, int rows) throws IOException {
+        if (rowsWritten + rows > height) throw new IOException("More rows than the image height");
+        for (int r = 0; r < rows; r++) {
+            int src = offset + r * width;
+            row[0] = 1;  // Sub filter: each byte is stored as the difference to the pixel on its left
+            int prev = 0;
+            for (int x = 0, i = 1; x < width; x++, i += 4) {
+                int rgba = toRgba(argbPre[src + x]);
+                row[i] = (byte) ((rgba >>> 24) - (prev >>> 24));
+                row[i + 1] = (byte) ((rgba >>> 16) - (prev >>> 16));
+                row[i + 2] = (byte) ((rgba >>> 8) - (prev >>> 8));
+                row[i + 3] = (byte) (rgba - prev);
+                prev = rgba;
+            }
+            deflater.write(row);
+        }
+        rowsWritten += rows;
+    }
+
+    // Finish the image data and write the trailer. Fails if fewer rows than the height were written
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) {
+                throw new IOException("Image incomplete: " + rowsWritten + " of " + height + " rows written");
+            }
+            deflater.finish();
+            deflater.flush();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            compressor.end();
+            out.close();
+        }
+    }
+
+    // Undo the premultiplication, PNG stores straight alpha
+    private static int toRgba(int argbPre) {
+        int a = argbPre >>> 24;
+        int r = (argbPre >> 16) & 0xff;
+        int g = (argbPre >> 8) & 0xff;
+        int b = argbPre & 0xff;
+        if (a != 0xff && a != 0) {
+            r = Math.min(255, (r * 255 + a / 2) / a);
+            g = Math.min(255, (g * 255 + a / 2) / a);
+            b = Math.min(255, (b * 255 + a / 2) / a);
+        }
+        return (r << 24) | (g << 16) | (b << 8) | a;
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    // Cuts the compressed stream into IDAT chunks
+    private class IdatStream extends OutputStream {
+        private final byte[] buffer = new byte[IDAT_SIZE];
+        private int length;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == buffer.length) flush();
+            buffer[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == buffer.length) flush();
+                int n = Math.min(len, buffer.length - length);
+                System.arraycopy(b, off, buffer, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (length == 0) return;
+            writeChunk("IDAT", buffer, length);
+            length = 0;
+        }
+    }
+}
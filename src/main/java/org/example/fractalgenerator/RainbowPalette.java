@@ -0,0 +1,17 @@
+package org.example.fractalgenerator;
+
+import javafx.scene.paint.Color;
+
+// Hue runs once around the color wheel over the iteration range
+public record RainbowPalette() implements Palette {
+
+    @Override
+    public String name() {
+        return "Rainbow";
+    }
+
+    @Override
+    public Color escapeColor(int iterations, int maxIterations) {
+        return Color.hsb(360.0 * (maxIterations - iterations) / maxIterations, 1, 1);
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.fractalgenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Writes pixels uncompressed into a memory-mapped file, mapping one band at a time so only the
+// band being written is ever in memory. The file starts with a 16 byte big-endian header:
+// "FRAW", width, height and bytes per pixel (4), followed by the rows as premultiplied ARGB ints
+public class RawImageWriter implements ImageSink {
+    public static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 0x46524157;  // "FRAW"
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private long position = HEADER_SIZE;
+    private int rowsWritten;
+
+    public RawImageWriter(Path file, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Image size must be positive");
+        this.width = width;
+        this.height = height;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(width).putInt(height).putInt(Integer.BYTES).flip();
+        channel.write(header, 0);
+    }
+
+    @Override
+    public void writeRows(int[] argbPre, int offset, int rows) throws IOException {
+        if (rowsWritten + rows > height) throw new IOException("More rows than the image height");
+        long bytes = (long) rows * width * Integer.BYTES;
+        MappedByteBuffer band = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+        band.asIntBuffer().put(argbPre, offset, rows * width);
+        position += bytes;
+        rowsWritten += rows;
+    }
+
+    // Fails if fewer rows than the height were written
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) {
+                throw new IOException("Image incomplete: " + rowsWritten + " of " + height + " rows written");
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.fractalgenerator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+// The view and parameters of an escape-time image described by HeadlessRenderer options. Render
+// workers get the same options and build the same job from them, see RenderWorker
+public record RenderJob(Viewport view, RenderParams params) {
+
+    public static RenderJob fromOptions(Map<String, String> options) throws IOException {
+        String type = HeadlessRenderer.required(options, "type");
+        int width = Integer.parseInt(options.getOrDefault("width", "1200"));
+        int height = Integer.parseInt(options.getOrDefault("height", "800"));
+        BigDecimal[] center = HeadlessRenderer.decimalPair(options.getOrDefault("center", "0,0"));
+        double[] c = HeadlessRenderer.pair(options.getOrDefault("julia", "-0.7,0.27015"));
+        double zoom = Double.parseDouble(options.getOrDefault("zoom", "1"));
+        String iterations = options.getOrDefault("iterations", "1000");
+        int maxIterations = iterations.equals("auto")
+                ? IterationBudget.fromZoom(zoom)
+                : Integer.parseInt(iterations);
+        Viewport view = new Viewport(width, height, zoom, -center[0].doubleValue(), -center[1].doubleValue());
+        FractalKernel kernel = HeadlessRenderer.escapeTimeKernel(type, options);
+        if (type.equals("mandelbrot") && zoom >= PerturbationKernel.DEEP_ZOOM) {
+            // Pixels are iterated relative to the exact center
+            kernel = new PerturbationKernel(center[0], center[1], zoom, maxIterations);
+            view = new Viewport(width, height, zoom, 0, 0);
+        }
+        String coloring = options.getOrDefault("coloring", "plain");
+        if (!List.of("plain", "smooth", "equalized", "smooth-equalized").contains(coloring)) {
+            throw new IllegalArgumentException("Unknown coloring: " + coloring);
+        }
+        return new RenderJob(view, new RenderParams(kernel, c[0], c[1], maxIterations, coloring.startsWith("smooth")));
+    }
+}
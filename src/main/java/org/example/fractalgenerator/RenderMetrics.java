@@ -0,0 +1,210 @@
+package org.example.fractalgenerator;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Timing of the frames rendered by RenderPipeline and the tiles computed for them by
+// EscapeTimeEngine. Frames are measured one at a time on the render thread; tiles arrive from
+// the engine's workers, including tiles computed for an export while a frame is rendered.
+// Shown by the metrics overlay, published over JMX and recorded as JFR events
+public class RenderMetrics implements RenderMetricsMXBean {
+    public static final String OBJECT_NAME = "org.example.fractalgenerator:type=RenderMetrics";
+
+    // Everything measured about one frame
+    public record Frame(String kind, int width, int height, long nanos, long pixels, long iterations,
+                        long[] tileNanos, int cacheHits, int cacheMisses, long allocatedBytes, int queueDepth) {
+
+        public double pixelsPerSecond() {
+            return pixels * 1e9 / Math.max(nanos, 1);
+        }
+
+        public double iterationsPerSecond() {
+            return iterations * 1e9 / Math.max(nanos, 1);
+        }
+
+        // Tile time at fraction p of the sorted tile times, 0 without tiles
+        public long tilePercentile(double p) {
+            if (tileNanos.length == 0) return 0;
+            return tileNanos[(int) Math.min(tileNanos.length - 1, Math.floor(p * tileNanos.length))];
+        }
+
+        public double cacheHitRate() {
+            int lookups = cacheHits + cacheMisses;
+            return lookups == 0 ? Double.NaN : (double) cacheHits / lookups;
+        }
+
+        public double allocationRate() {
+            return allocatedBytes < 0 ? Double.NaN : allocatedBytes * 1e9 / Math.max(nanos, 1);
+        }
+    }
+
+    private static final Frame NONE = new Frame("none", 0, 0, 0, 0, 0, new long[0], 0, 0, 0, 0);
+
+    private final LongAdder pixels = new LongAdder();
+    private final LongAdder iterations = new LongAdder();
+    // Tile times of the frame being rendered
+    private long[] tileNanos = new long[1024];
+    private int tiles;
+    // Only touched by the render thread
+    private long frameStart, pixelsAtStart, iterationsAtStart, allocatedAtStart;
+    private int queueDepth;
+    private FrameRenderedEvent event;
+    private volatile Frame last = NONE;
+    private volatile long frameCount;
+
+    // Called by the engine's workers for every tile they finish
+    void tileRendered(long nanos, long tilePixels, long tileIterations) {
+        pixels.add(tilePixels);
+        iterations.add(tileIterations);
+        synchronized (this) {
+            if (tiles == tileNanos.length) tileNanos = Arrays.copyOf(tileNanos, tiles * 2);
+            tileNanos[tiles++] = nanos;
+        }
+    }
+
+    // Start measuring a frame; queued is the number of views waiting behind it
+    void frameStarted(int queued) {
+        event = new FrameRenderedEvent();
+        event.begin();
+        synchronized (this) {
+            tiles = 0;
+        }
+        queueDepth = queued;
+        pixelsAtStart = pixels.sum();
+        iterationsAtStart = iterations.sum();
+        allocatedAtStart = allocatedBytes();
+        frameStart = System.nanoTime();
+    }
+
+    // Finish the frame started last and publish it
+    void frameFinished(String kind, int width, int height, int cacheHits, int cacheMisses) {
+        long nanos = System.nanoTime() - frameStart;
+        long allocated = allocatedAtStart < 0 ? -1 : allocatedBytes() - allocatedAtStart;
+        long[] times;
+        synchronized (this) {
+            times = Arrays.copyOf(tileNanos, tiles);
+        }
+        Arrays.sort(times);
+        Frame frame = new Frame(kind, width, height, nanos, pixels.sum() - pixelsAtStart,
+                iterations.sum() - iterationsAtStart, times, cacheHits, cacheMisses, allocated, queueDepth);
+        last = frame;
+        frameCount++;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.width = width;
+            event.height = height;
+            event.pixels = frame.pixels();
+            event.iterations = frame.iterations();
+            event.tiles = times.length;
+            event.cacheHits = cacheHits;
+            event.cacheMisses = cacheMisses;
+            event.allocated = allocated;
+            event.queueDepth = queueDepth;
+            event.commit();
+        }
+    }
+
+    // Bytes allocated by all threads so far, or -1 if the JVM does not count them
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean counting && counting.isThreadAllocatedMemoryEnabled()) {
+            return counting.getTotalThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    // The last finished frame
+    public Frame lastFrame() {
+        return last;
+    }
+
+    // Publish these metrics on the platform MBean server
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    public void unregister() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+    }
+
+    // Overlay text for the last frame
+    public String summary() {
+        Frame f = last;
+        return String.format("""
+                        Frame %d: %s, %.1f ms, %d tiles (median %.2f ms, 95%% %.2f ms, max %.2f ms)
+                        %.1f Mpixels/s, %.1f Miterations/s
+                        Cache hit rate %s, allocation %s, queue depth %d""",
+                frameCount, f.kind(), f.nanos() / 1e6, f.tileNanos().length,
+                f.tilePercentile(0.5) / 1e6, f.tilePercentile(0.95) / 1e6, f.tilePercentile(1) / 1e6,
+                f.pixelsPerSecond() / 1e6, f.iterationsPerSecond() / 1e6,
+                Double.isNaN(f.cacheHitRate()) ? "-" : String.format("%.0f%%", 100 * f.cacheHitRate()),
+                Double.isNaN(f.allocationRate()) ? "-" : String.format("%.1f MB/s", f.allocationRate() / (1024 * 1024)),
+                f.queueDepth());
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public String getLastFrameKind() {
+        return last.kind();
+    }
+
+    @Override
+    public double getLastFrameMillis() {
+        return last.nanos() / 1e6;
+    }
+
+    @Override
+    public double getPixelsPerSecond() {
+        return last.pixelsPerSecond();
+    }
+
+    @Override
+    public double getIterationsPerSecond() {
+        return last.iterationsPerSecond();
+    }
+
+    @Override
+    public int getTileCount() {
+        return last.tileNanos().length;
+    }
+
+    @Override
+    public double getTileMedianMillis() {
+        return last.tilePercentile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getTile95thPercentileMillis() {
+        return last.tilePercentile(0.95) / 1e6;
+    }
+
+    @Override
+    public double getTileMaxMillis() {
+        return last.tilePercentile(1) / 1e6;
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        return last.cacheHitRate();
+    }
+
+    @Override
+    public double getAllocationRate() {
+        return last.allocationRate();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return last.queueDepth();
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.fractalgenerator;
+
+// JMX view of RenderMetrics, registered as org.example.fractalgenerator:type=RenderMetrics.
+// Apart from the frame count every attribute describes the last finished frame
+public interface RenderMetricsMXBean {
+    long getFrameCount();
+
+    // recolor, pan, stored, cached, tiled, full, time-boxed or cancelled, see RenderPipeline
+    String getLastFrameKind();
+
+    double getLastFrameMillis();
+
+    double getPixelsPerSecond();
+
+    double getIterationsPerSecond();
+
+    int getTileCount();
+
+    double getTileMedianMillis();
+
+    double getTile95thPercentileMillis();
+
+    double getTileMaxMillis();
+
+    // Fraction of the looked up tiles found in the tile cache, NaN if the frame looked up none
+    double getCacheHitRate();
+
+    // Bytes allocated per second by all threads while the frame was rendered
+    double getAllocationRate();
+
+    // Views still waiting to be rendered when the frame started
+    int getQueueDepth();
+}
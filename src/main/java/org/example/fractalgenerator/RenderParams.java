@@ -0,0 +1,14 @@
+package org.example.fractalgenerator;
+
+// Everything besides the viewport that decides the iteration count of a pixel, and whether its
+// fractional escape value is wanted as well for smooth coloring
+public record RenderParams(FractalKernel kernel, double juliaCX, double juliaCY, int maxIterations, boolean smooth) {
+
+    public RenderParams(FractalKernel kernel, double juliaCX, double juliaCY, int maxIterations) {
+        this(kernel, juliaCX, juliaCY, maxIterations, false);
+    }
+
+    public RenderParams withSmooth(boolean smooth) {
+        return new RenderParams(kernel, juliaCX, juliaCY, maxIterations, smooth);
+    }
+}
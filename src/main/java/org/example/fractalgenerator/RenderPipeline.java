@@ -0,0 +1,460 @@
+package org.example.fractalgenerator;
+
+import javafx.application.Platform;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Renders escape-time fractals off the FX thread, coarse first and then refined pass by pass.
+// Every submit starts a new generation; work belonging to an older generation is abandoned.
+// The iteration counts of the last finished frame are kept, so a submit that only changes
+// the colors is a single recoloring pass, and a pan by whole pixels only computes the strips
+// that scrolled into view. With a tile cache, the full resolution pass of a pixel aligned view
+// is assembled from cached tiles and only the missing tiles are computed. With a frame store,
+// computed frames are kept on disk and a stored view is read back instead of computed. Coloring
+// is a parallel post-pass over the counts, see ColoringPass. The counts, pixels and images of a
+// frame come from a pool by frame size, so switching between sizes does not allocate them again.
+public class RenderPipeline {
+    // Block size of each pass, from a 1/8 resolution preview down to full resolution
+    private static final int[] PASSES = {8, 4, 2, 1};
+    // Frame sizes whose buffers are kept, enough to go back and forth between two
+    private static final int POOLED_SIZES = 2;
+
+    // Receives each finished pass on the FX thread
+    @FunctionalInterface
+    public interface FrameListener {
+        // image holds one pixel per step x step block of the canvas
+        void frameReady(WritableImage image, int step);
+    }
+
+    private final EscapeTimeEngine engine;
+    private final TileCache tileCache;
+    private final RenderMetrics metrics;
+    private final Consumer<Exception> onError;
+    private final AtomicLong generation = new AtomicLong();
+    // Submitted views waiting for the render thread, reported as the queue depth
+    private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, r -> {
+        Thread thread = new Thread(r, "fractal-render");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 0 for no time limit, see setFrameBudget
+    private volatile long frameBudgetNanos;
+    // Fed the counts of every finished frame, or null
+    private volatile IterationBudget iterationBudget;
+    // Computed frames on disk, or null
+    private volatile FrameStore frameStore;
+    private final BufferPool<FrameBuffers> pool = new BufferPool<>(POOLED_SIZES, FrameBuffers::new);
+    // Only touched by the render thread: the buffers of the current frame size and their counts
+    private FrameBuffers frameBuffers;
+    private IterationBuffer buffer;
+
+    // Everything a frame of one size needs
+    private static class FrameBuffers {
+        final IterationBuffer counts;
+        // Premultiplied ARGB pixels of each pass not handed to the FX thread. A pass is colored into
+        // the spare array, which the FX thread gives back once it has copied it into the image, so a
+        // pass published again before the last one was shown gets an array of its own
+        final List<AtomicReference<int[]>> spares = new ArrayList<>();
+        // Only touched by the FX thread
+        final WritableImage[] images = new WritableImage[PASSES.length];
+        // Pixels still to deepen in a time-boxed frame
+        int[] pending;
+
+        FrameBuffers(int width, int height) {
+            counts = new IterationBuffer(width, height);
+            for (int pass = 0; pass < PASSES.length; pass++) {
+                spares.add(new AtomicReference<>());
+            }
+        }
+    }
+
+    public RenderPipeline(EscapeTimeEngine engine, Consumer<Exception> onError) {
+        this(engine, null, null, onError);
+    }
+
+    // tileCache may be null to always compute every pixel, metrics null to measure nothing.
+    // Tile times come from the engine, so it should report to the same metrics
+    public RenderPipeline(EscapeTimeEngine engine, TileCache tileCache, RenderMetrics metrics,
+                          Consumer<Exception> onError) {
+        this.engine = engine;
+        this.tileCache = tileCache;
+        this.metrics = metrics;
+        this.onError = onError;
+    }
+
+    // Start rendering a new view, superseding anything still in flight
+    // colors maps an iteration count to a premultiplied ARGB pixel and must not be modified afterwards
+    public void submit(Viewport view, RenderParams params, int[] colors, FrameListener listener) {
+        submit(view, params, new ColoringPass(colors, false), listener);
+    }
+
+    // Same with smooth or equalized coloring; smooth coloring needs params.smooth()
+    public void submit(Viewport view, RenderParams params, ColoringPass coloring, FrameListener listener) {
+        long gen = generation.incrementAndGet();
+        executor.execute(() -> render(gen, view, params, coloring, listener));
+    }
+
+    // Aim to have every frame at full resolution within this many milliseconds, 0 for no limit.
+    // When the coarsest pass shows the frame would take longer, the remaining passes stop at a
+    // lower iteration cap; pixels that reach it are then iterated further, cap by cap, until the
+    // frame has its full depth or a newer view comes in
+    public void setFrameBudget(long millis) {
+        frameBudgetNanos = millis * 1_000_000;
+    }
+
+    // Let the budget see the counts of every finished frame, null to stop
+    public void setIterationBudget(IterationBudget budget) {
+        iterationBudget = budget;
+    }
+
+    // Abandon the render in flight without starting a new one
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    // Keep computed frames in store and look views up in it first, or not at all with null
+    public void setFrameStore(FrameStore store) {
+        frameStore = store;
+    }
+
+    // Stop rendering. With a frame store, the frame on screen is stored first even if it only came
+    // from panning, so the next session can start from it
+    public void shutdown() {
+        cancel();
+        if (frameStore != null) {
+            try {
+                executor.submit(this::storeFrame).get(2, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // Computed again next time
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    private void storeFrame() {
+        if (buffer == null || buffer.getView() == null) return;
+        RenderParams params = buffer.getParams();
+        frameStore.save(buffer.getView(), params, buffer.getCounts(), params.smooth() ? buffer.getSmooth() : null);
+    }
+
+    private void render(long gen, Viewport view, RenderParams params, ColoringPass colors, FrameListener listener) {
+        BooleanSupplier stale = () -> generation.get() != gen;
+        if (stale.getAsBoolean()) return;
+        long start = System.nanoTime();
+        if (metrics != null) metrics.frameStarted(queue.size());
+        // What the frame turned out to need, for the metrics
+        String kind = "cancelled";
+        int cacheHits = 0;
+        int cacheMisses = 0;
+        try {
+            if (buffer == null || buffer.getWidth() != view.width() || buffer.getHeight() != view.height()) {
+                frameBuffers = pool.get(view.width(), view.height());
+                buffer = frameBuffers.counts;
+            }
+
+            // Same frame in new colors
+            if (buffer.holds(view, params)) {
+                kind = "recolor";
+                publish(gen, view, params, PASSES.length - 1, colors, listener);
+                return;
+            }
+
+            // Everything from here changes the counts, which the frame store may still be copying
+            FrameStore store = frameStore;
+            if (store != null) store.awaitCopied();
+
+            // Pan by whole pixels: reuse what is still visible
+            int[] delta = panDelta(view, params);
+            if (delta != null) {
+                pan(view, params, delta[0], delta[1]);
+                kind = "pan";
+                publish(gen, view, params, PASSES.length - 1, colors, listener);
+                return;
+            }
+
+            buffer.invalidate();
+            // Rendered before, possibly in an earlier session
+            if (store != null && store.load(view, params, buffer.getCounts(), params.smooth() ? buffer.getSmooth() : null)) {
+                kind = "stored";
+                complete(view, params);
+                publish(gen, view, params, PASSES.length - 1, colors, listener);
+                return;
+            }
+
+            // Tiles hold counts only, so smooth frames are always computed
+            TiledFrame tiles = tileCache == null || params.smooth() ? null : lookupTiles(view, params);
+            if (tiles != null) {
+                cacheMisses = tiles.missing.size();
+                cacheHits = tiles.tiles.size() - cacheMisses;
+            }
+            // Revisited area: nothing to compute
+            if (tiles != null && tiles.missing.isEmpty()) {
+                kind = "cached";
+                tiles.copyInto(buffer.getCounts());
+                complete(view, params);
+                if (store != null) store.save(view, params, buffer.getCounts(), null);
+                publish(gen, view, params, PASSES.length - 1, colors, listener);
+                return;
+            }
+
+            int[] iterations = buffer.getCounts();
+            float[] smooth = params.smooth() ? buffer.getSmooth() : null;
+            // With tiles, the full resolution pass computes the missing tiles instead
+            int passes = tiles == null ? PASSES.length : PASSES.length - 1;
+            int cap = params.maxIterations();
+            for (int pass = 0; pass < passes; pass++) {
+                long passStart = System.nanoTime();
+                RenderParams passParams = capped(params, cap);
+                if (!engine.renderPass(view, passParams, PASSES[pass], pass > 0, iterations, smooth, stale)) return;
+                publish(gen, view, passParams, pass, colors, listener);
+                if (pass == 0 && frameBudgetNanos > 0) {
+                    cap = timeBoxedCap(view, params, start, System.nanoTime() - passStart);
+                    // Tiles are only cached at full depth, so a capped frame is computed in full
+                    if (cap < params.maxIterations()) {
+                        tiles = null;
+                        passes = PASSES.length;
+                    }
+                }
+            }
+            if (cap < params.maxIterations()) {
+                if (!deepen(gen, view, params, cap, colors, listener, stale)) return;
+            } else if (tiles != null) {
+                if (!engine.renderBlocks(tiles.grid, params, tiles.missing, stale)) return;
+                tiles.storeMissing();
+                tiles.copyInto(iterations);
+                publish(gen, view, params, PASSES.length - 1, colors, listener);
+            }
+            complete(view, params);
+            if (store != null) store.save(view, params, iterations, smooth);
+            kind = cap < params.maxIterations() ? "time-boxed" : tiles == null ? "full" : "tiled";
+        } catch (Exception ex) {
+            if (!stale.getAsBoolean()) Platform.runLater(() -> onError.accept(ex));
+        } finally {
+            if (metrics != null) metrics.frameFinished(kind, view.width(), view.height(), cacheHits, cacheMisses);
+        }
+    }
+
+    // Record that the buffer holds the finished frame and show its counts to the iteration budget
+    private void complete(Viewport view, RenderParams params) {
+        buffer.markComplete(view, params);
+        IterationBudget budget = iterationBudget;
+        if (budget != null) budget.observe(buffer.getCounts(), params.maxIterations());
+    }
+
+    // The deepest iteration cap at which the passes after the coarsest still fit in what is left of
+    // the frame budget, judged by the counts and time of the coarsest pass
+    private int timeBoxedCap(Viewport view, RenderParams params, long frameStart, long passNanos) {
+        int step = PASSES[0];
+        int width = view.width();
+        int columns = (width + step - 1) / step;
+        int rows = (view.height() + step - 1) / step;
+        int[] iterations = buffer.getCounts();
+        int[] sample = new int[columns * rows];
+        long work = 0;
+        for (int j = 0; j < rows; j++) {
+            for (int i = 0; i < columns; i++) {
+                int count = iterations[j * step * width + i * step];
+                sample[j * columns + i] = count;
+                work += count;
+            }
+        }
+        double perNano = work / (double) Math.max(passNanos, 1);
+        long left = frameBudgetNanos - (System.nanoTime() - frameStart);
+        // The remaining passes iterate this many times as many pixels as the sample
+        double scale = (double) width * view.height() / sample.length - 1;
+        return IterationBudget.affordableCap(sample, params.maxIterations(), left * perNano / scale);
+    }
+
+    // Raise the cap of a time-boxed frame and show each step. Returns false if a newer view came
+    // in first
+    private boolean deepen(long gen, Viewport view, RenderParams params, int cap, ColoringPass colors,
+                           FrameListener listener, BooleanSupplier stale) {
+        int[] iterations = buffer.getCounts();
+        float[] smooth = params.smooth() ? buffer.getSmooth() : null;
+        if (frameBuffers.pending == null) frameBuffers.pending = new int[iterations.length];
+        return deepen(engine, view, params, cap, iterations, smooth, frameBuffers.pending,
+                deeper -> publish(gen, view, deeper, PASSES.length - 1, colors, listener), stale);
+    }
+
+    // Raise the cap of counts computed with it four times at a time up to params.maxIterations(),
+    // iterating again only the pixels that reached it, and pass the parameters of each step to
+    // step. pending needs room for every pixel. Returns false if stale first
+    static boolean deepen(EscapeTimeEngine engine, Viewport view, RenderParams params, int cap, int[] iterations,
+                          float[] smooth, int[] pending, Consumer<RenderParams> step, BooleanSupplier stale) {
+        while (cap < params.maxIterations()) {
+            int count = 0;
+            for (int i = 0; i < iterations.length; i++) {
+                if (iterations[i] == cap) pending[count++] = i;
+            }
+            cap = (int) Math.min(params.maxIterations(), 4L * cap);
+            RenderParams deeper = capped(params, cap);
+            if (!engine.renderPixels(view, deeper, pending, count, iterations, smooth, stale)) return false;
+            step.accept(deeper);
+        }
+        return true;
+    }
+
+    // The parameters with maxIterations lowered to cap
+    private static RenderParams capped(RenderParams params, int cap) {
+        if (cap == params.maxIterations()) return params;
+        return new RenderParams(params.kernel(), params.juliaCX(), params.juliaCY(), cap, params.smooth());
+    }
+
+    // Look up every tile the view touches, or return null if the view is not on the tile grid
+    private TiledFrame lookupTiles(Viewport view, RenderParams params) {
+        // Pixel position of the view's top left corner on the grid of the unpanned view
+        double originX = -view.offsetX() * view.zoom() * view.width() / 3;
+        double originY = -view.offsetY() * 0.5 * view.zoom() * view.height();
+        long x = Math.round(originX);
+        long y = Math.round(originY);
+        if (Math.abs(originX - x) > 1e-3 || Math.abs(originY - y) > 1e-3) return null;
+        if (Math.abs(x) > Integer.MAX_VALUE / 2 || Math.abs(y) > Integer.MAX_VALUE / 2) return null;
+
+        TiledFrame frame = new TiledFrame(view, (int) x, (int) y);
+        int size = TileCache.TILE_SIZE;
+        int firstX = Math.floorDiv(frame.originX, size);
+        int lastX = Math.floorDiv(frame.originX + view.width() - 1, size);
+        int firstY = Math.floorDiv(frame.originY, size);
+        int lastY = Math.floorDiv(frame.originY + view.height() - 1, size);
+        for (int ty = firstY; ty <= lastY; ty++) {
+            for (int tx = firstX; tx <= lastX; tx++) {
+                TileCache.Key key = new TileCache.Key(params, frame.grid, tx, ty);
+                IntBuffer tile = tileCache.get(key);
+                if (tile == null) {
+                    int[] counts = new int[size * size];
+                    tile = IntBuffer.wrap(counts);
+                    frame.missing.add(new EscapeTimeEngine.Block(tx * size, ty * size, size, size, counts, 0, size));
+                    frame.missingKeys.add(key);
+                }
+                frame.tiles.add(tile);
+                frame.tileX.add(tx);
+                frame.tileY.add(ty);
+            }
+        }
+        return frame;
+    }
+
+    // The tiles covering one pixel aligned view, cached or still to be computed
+    private class TiledFrame {
+        final Viewport view;
+        final Viewport grid;
+        final int originX, originY;
+        final List<IntBuffer> tiles = new ArrayList<>();
+        final List<Integer> tileX = new ArrayList<>();
+        final List<Integer> tileY = new ArrayList<>();
+        final List<EscapeTimeEngine.Block> missing = new ArrayList<>();
+        final List<TileCache.Key> missingKeys = new ArrayList<>();
+
+        TiledFrame(Viewport view, int originX, int originY) {
+            this.view = view;
+            this.grid = new Viewport(view.width(), view.height(), view.zoom(), 0, 0);
+            this.originX = originX;
+            this.originY = originY;
+        }
+
+        // Hand the freshly computed tiles to the cache
+        void storeMissing() {
+            for (int i = 0; i < missing.size(); i++) {
+                tileCache.put(missingKeys.get(i), missing.get(i).out());
+            }
+        }
+
+        // Copy the visible part of every tile into the row-major iteration buffer of the view
+        void copyInto(int[] iterations) {
+            int size = TileCache.TILE_SIZE;
+            int width = view.width();
+            for (int i = 0; i < tiles.size(); i++) {
+                IntBuffer tile = tiles.get(i);
+                int left = tileX.get(i) * size - originX;
+                int top = tileY.get(i) * size - originY;
+                int fromX = Math.max(0, -left);
+                int toX = Math.min(size, width - left);
+                int fromY = Math.max(0, -top);
+                int toY = Math.min(size, view.height() - top);
+                for (int row = fromY; row < toY; row++) {
+                    tile.get(row * size + fromX, iterations, (top + row) * width + left + fromX, toX - fromX);
+                }
+            }
+        }
+    }
+
+    // Pixel shift from the finished frame in the buffer to the given view, or null if the view
+    // is not that frame moved by whole pixels
+    private int[] panDelta(Viewport view, RenderParams params) {
+        Viewport old = buffer.getView();
+        if (old == null || !params.equals(buffer.getParams()) || old.zoom() != view.zoom()) return null;
+        double dx = (old.offsetX() - view.offsetX()) * view.zoom() * view.width() / 3;
+        double dy = (old.offsetY() - view.offsetY()) * 0.5 * view.zoom() * view.height();
+        long x = Math.round(dx);
+        long y = Math.round(dy);
+        if (Math.abs(dx - x) > 1e-3 || Math.abs(dy - y) > 1e-3) return null;
+        if (Math.abs(x) >= view.width() || Math.abs(y) >= view.height()) return null;
+        return new int[]{(int) x, (int) y};
+    }
+
+    // Shift the finished frame and compute only the newly exposed rows and columns. This is not
+    // cancelled part way, so the buffer always ends up holding a finished frame to pan from next
+    private void pan(Viewport view, RenderParams params, int dx, int dy) {
+        int width = view.width();
+        int height = view.height();
+        int[] iterations = buffer.getCounts();
+        buffer.invalidate();
+        buffer.shift(dx, dy);
+
+        // Exposed rows across the full width, then exposed columns over the remaining rows
+        int rowsY = dy > 0 ? height - dy : 0;
+        int rows = Math.abs(dy);
+        float[] smooth = params.smooth() ? buffer.getSmooth() : null;
+        engine.renderRegion(view, params, 0, rowsY, width, rows, iterations, smooth, rowsY * width, width);
+        int colsX = dx > 0 ? width - dx : 0;
+        int colsY = dy > 0 ? 0 : rows;
+        engine.renderRegion(view, params, colsX, colsY, Math.abs(dx), height - rows,
+                iterations, smooth, colsY * width + colsX, width);
+        // Mostly the counts the budget has seen already, so they are not shown to it again
+        buffer.markComplete(view, params);
+    }
+
+    // Color a finished pass and hand it to the FX thread; params carries the cap counted as inside
+    private void publish(long gen, Viewport view, RenderParams params, int pass, ColoringPass colors,
+                         FrameListener listener) {
+        int step = PASSES[pass];
+        int w = (view.width() + step - 1) / step;
+        int h = (view.height() + step - 1) / step;
+        FrameBuffers sized = frameBuffers;
+        AtomicReference<int[]> spare = sized.spares.get(pass);
+        int[] taken = spare.getAndSet(null);
+        int[] frame = taken != null ? taken : new int[w * h];
+        colors.color(buffer.getCounts(), params.smooth() ? buffer.getSmooth() : null, view.width(), step,
+                params.maxIterations(), frame, w, h);
+        if (generation.get() != gen) {
+            spare.set(frame);
+            return;
+        }
+        Platform.runLater(() -> {
+            // A newer view may have been submitted while this pass was queued
+            if (generation.get() == gen) {
+                WritableImage image = sized.images[pass];
+                if (image == null) image = sized.images[pass] = new WritableImage(w, h);
+                image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbPreInstance(), frame, 0, w);
+                listener.frameReady(image, step);
+            }
+            spare.set(frame);
+        });
+    }
+}
@@ -0,0 +1,186 @@
+package org.example.fractalgenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Computes tiles of escape-time images for a TileCoordinator on another machine or process.
+// The protocol is plain binary over TCP, one connection per coordinator thread:
+//  - the coordinator sends MAGIC, VERSION and the HeadlessRenderer options of the job, and the
+//    worker answers OK once it has built the job, or ERROR and a message
+//  - then for every TILE x, y, width, height the worker answers OK and the tile's counts, row by
+//    row, followed by their smooth values if the job is smooth, or ERROR and a message, as for
+//    any side outside 1 to MAX_TILE_SIZE. While the tile is being computed it sends BUSY every
+//    HEARTBEAT_MILLIS, so the coordinator can tell a long tile from a worker that is gone
+//  - DONE ends the connection
+// Start one per machine with --port; it uses every core for each tile and serves any number
+// of coordinators
+public class RenderWorker {
+    static final int MAGIC = 0x46524354;
+    static final int VERSION = 2;
+    static final byte DONE = 0;
+    static final byte TILE = 1;
+    static final byte OK = 2;
+    static final byte ERROR = 3;
+    static final byte BUSY = 4;
+    static final int HEARTBEAT_MILLIS = 2000;
+    // Largest tile side a worker computes, well above the coordinator's TILE_WIDTH x 256 tiles, so
+    // a bad request cannot make it allocate arbitrarily large buffers
+    static final int MAX_TILE_SIZE = 1024;
+
+    private final EscapeTimeEngine engine = new EscapeTimeEngine();
+    // Runs the tiles, so that connection threads are free to send BUSY
+    private final ExecutorService tiles = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "fractal-worker-tile");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static void main(String[] args) {
+        try {
+            Map<String, String> options = HeadlessRenderer.parseOptions(args);
+            int port = Integer.parseInt(options.getOrDefault("port", "7070"));
+            new RenderWorker().serve(port);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: RenderWorker [--port N] (default 7070)");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Render worker failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Accept coordinators until the process is stopped
+    public void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket()) {
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(port));
+            System.out.println("Render worker listening on port " + server.getLocalPort());
+            while (true) {
+                Socket socket = server.accept();
+                Thread thread = new Thread(() -> handle(socket), "fractal-worker-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } finally {
+            tiles.shutdownNow();
+            engine.shutdown();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return;
+            RenderJob job;
+            try {
+                job = RenderJob.fromOptions(readOptions(in));
+            } catch (IOException | RuntimeException e) {
+                fail(out, "Cannot set up job: " + e.getMessage());
+                return;
+            }
+            out.writeByte(OK);
+            out.flush();
+
+            int[] counts = new int[0];
+            float[] smooth = new float[0];
+            byte[] bytes = new byte[0];
+            while (in.readByte() == TILE) {
+                int x = in.readInt();
+                int y = in.readInt();
+                int w = in.readInt();
+                int h = in.readInt();
+                if (w <= 0 || h <= 0 || w > MAX_TILE_SIZE || h > MAX_TILE_SIZE) {
+                    fail(out, "Bad tile size " + w + "x" + h + ", sides must be 1 to " + MAX_TILE_SIZE);
+                    return;
+                }
+                if (counts.length < w * h) {
+                    counts = new int[w * h];
+                    smooth = new float[w * h];
+                    bytes = new byte[4 * w * h];
+                }
+                try {
+                    renderTile(job, x, y, w, h, counts, job.params().smooth() ? smooth : null, out);
+                } catch (ExecutionException e) {
+                    fail(out, "Tile failed: " + e.getCause().getMessage());
+                    return;
+                }
+                out.writeByte(OK);
+                ByteBuffer.wrap(bytes).asIntBuffer().put(counts, 0, w * h);
+                out.write(bytes, 0, 4 * w * h);
+                if (job.params().smooth()) {
+                    ByteBuffer.wrap(bytes).asFloatBuffer().put(smooth, 0, w * h);
+                    out.write(bytes, 0, 4 * w * h);
+                }
+                out.flush();
+            }
+        } catch (EOFException e) {
+            // The coordinator went away
+        } catch (IOException e) {
+            System.err.println("Connection from " + socket.getRemoteSocketAddress() + " failed: " + e.getMessage());
+        }
+    }
+
+    // Compute a tile on a tile thread, sending BUSY until it is done
+    private void renderTile(RenderJob job, int x, int y, int w, int h, int[] counts, float[] smooth,
+                            DataOutputStream out) throws IOException, ExecutionException {
+        Future<?> tile = tiles.submit(() -> engine.renderRegion(job.view(), job.params(), x, y, w, h, counts,
+                smooth, 0, w));
+        try {
+            while (true) {
+                try {
+                    tile.get(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    out.writeByte(BUSY);
+                    out.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Worker stopped");
+        }
+    }
+
+    private static void fail(DataOutputStream out, String message) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(message);
+        out.flush();
+    }
+
+    static void writeOptions(DataOutputStream out, Map<String, String> options) throws IOException {
+        out.writeInt(options.size());
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            out.writeUTF(option.getKey());
+            out.writeUTF(option.getValue());
+        }
+    }
+
+    static Map<String, String> readOptions(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            options.put(in.readUTF(), in.readUTF());
+        }
+        return options;
+    }
+}
@@ -0,0 +1,72 @@
+package org.example.fractalgenerator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+// What FractalRenderer was showing when it closed, so the next start can show it again. Saved
+// as a properties file next to the frame store; the view's frame itself is in the store. The
+// window size is restored too, as it decides the frame size and so which stored frame fits
+public record Session(String fractalType, String depth, String colorScheme, String juliaCX, String juliaCY,
+                      int zoomLevel, double zoomFactor, double offsetX, double offsetY,
+                      BigDecimal referenceX, BigDecimal referenceY,
+                      boolean smooth, boolean equalize, boolean autoIterations,
+                      double windowWidth, double windowHeight) {
+
+    // The session saved in file, or null if there is none or it cannot be read
+    public static Session load(Path file) {
+        if (!Files.exists(file)) return null;
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            return new Session(properties.getProperty("fractalType"), properties.getProperty("depth"),
+                    properties.getProperty("colorScheme"), properties.getProperty("juliaCX"),
+                    properties.getProperty("juliaCY"),
+                    Integer.parseInt(properties.getProperty("zoomLevel")),
+                    Double.parseDouble(properties.getProperty("zoomFactor")),
+                    Double.parseDouble(properties.getProperty("offsetX")),
+                    Double.parseDouble(properties.getProperty("offsetY")),
+                    new BigDecimal(properties.getProperty("referenceX")),
+                    new BigDecimal(properties.getProperty("referenceY")),
+                    Boolean.parseBoolean(properties.getProperty("smooth")),
+                    Boolean.parseBoolean(properties.getProperty("equalize")),
+                    Boolean.parseBoolean(properties.getProperty("autoIterations")),
+                    // Not in sessions saved before the window could be resized
+                    Double.parseDouble(properties.getProperty("windowWidth", "0")),
+                    Double.parseDouble(properties.getProperty("windowHeight", "0")));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring saved session " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("fractalType", fractalType);
+        properties.setProperty("depth", depth);
+        properties.setProperty("colorScheme", colorScheme);
+        properties.setProperty("juliaCX", juliaCX);
+        properties.setProperty("juliaCY", juliaCY);
+        properties.setProperty("zoomLevel", Integer.toString(zoomLevel));
+        // Double.toString reads back as the same double, so the view and its stored frame match
+        properties.setProperty("zoomFactor", Double.toString(zoomFactor));
+        properties.setProperty("offsetX", Double.toString(offsetX));
+        properties.setProperty("offsetY", Double.toString(offsetY));
+        properties.setProperty("referenceX", referenceX.toString());
+        properties.setProperty("referenceY", referenceY.toString());
+        properties.setProperty("smooth", Boolean.toString(smooth));
+        properties.setProperty("equalize", Boolean.toString(equalize));
+        properties.setProperty("autoIterations", Boolean.toString(autoIterations));
+        properties.setProperty("windowWidth", Double.toString(windowWidth));
+        properties.setProperty("windowHeight", Double.toString(windowHeight));
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Fractal Renderer session");
+        }
+    }
+}
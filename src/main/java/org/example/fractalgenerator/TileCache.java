@@ -0,0 +1,94 @@
+package org.example.fractalgenerator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.LinkedHashMap;
+
+// Memory-bounded LRU cache of finished iteration tiles. Tiles sit on the pixel grid of the
+// unpanned view at their zoom level, so any pixel aligned view at that level can reuse them.
+public class TileCache {
+    public static final int TILE_SIZE = 128;
+    private static final long TILE_BYTES = (long) TILE_SIZE * TILE_SIZE * Integer.BYTES;
+
+    // grid is the view at the tile's zoom level with no pan offset
+    public record Key(RenderParams params, Viewport grid, int tileX, int tileY) {
+    }
+
+    private final long maxBytes;
+    private final boolean offHeap;
+    private final LinkedHashMap<Key, IntBuffer> tiles = new LinkedHashMap<>(256, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Keep at most maxBytes of tiles, in direct buffers outside the Java heap if offHeap is set
+    public TileCache(long maxBytes, boolean offHeap) {
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+    }
+
+    // Cache sized by the fractal.tileCache.mb and fractal.tileCache.offHeap system properties
+    public static TileCache fromSystemProperties() {
+        long megabytes = Long.getLong("fractal.tileCache.mb", 256);
+        return new TileCache(megabytes * 1024 * 1024, Boolean.getBoolean("fractal.tileCache.offHeap"));
+    }
+
+    // The cached tile, TILE_SIZE rows of TILE_SIZE counts, or null. Counts towards the hit rate
+    public synchronized IntBuffer get(Key key) {
+        IntBuffer tile = tiles.get(key);
+        if (tile == null) misses++;
+        else hits++;
+        return tile == null ? null : tile.duplicate();
+    }
+
+    // Store a computed tile, evicting the least recently used tiles over the memory budget
+    public synchronized void put(Key key, int[] counts) {
+        IntBuffer tile = offHeap
+                ? ByteBuffer.allocateDirect(counts.length * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer()
+                : IntBuffer.allocate(counts.length);
+        tile.put(counts).flip();
+        tiles.put(key, tile);
+        var eldest = tiles.entrySet().iterator();
+        while (tiles.size() * TILE_BYTES > maxBytes && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        tiles.clear();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getTileCount() {
+        return tiles.size();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    // Share of lookups that found their tile, 0 before the first lookup
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d tiles, %d hits, %d misses, %d evictions", tiles.size(), hits, misses, evictions);
+    }
+}
@@ -0,0 +1,349 @@
+package org.example.fractalgenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Hands the tiles of an escape-time image out to RenderWorker processes and puts their counts
+// back together band by band, in the order ImageExporter writes them. One thread per worker takes
+// the next tile whenever its worker is idle, so fast workers simply take more tiles. When no new
+// tile is left, an idle worker also computes a tile that another worker is still busy with, and
+// the first result wins, so a slow or stuck worker does not hold up the image. Workers say they
+// are busy every few seconds while computing a tile, so a tile may take as long as it needs, but
+// a tile whose worker fails or goes silent for the timeout goes back to the front of the queue; a
+// worker that fails three times in a row is dropped, and the image fails only once every worker
+// is gone.
+// Tiles are only handed out for the few bands after the one being written, which bounds the
+// counts held in memory however large the image is
+public class TileCoordinator implements ImageExporter.CountSource, Closeable {
+    // Tiles are this wide and one band high
+    public static final int TILE_WIDTH = 256;
+    // Bands from the one being written whose tiles may be computed
+    private static final int WINDOW = 4;
+    private static final int MAX_FAILURES = 3;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private record Tile(int id, int band, int x, int y, int width, int height) {
+    }
+
+    private final Map<String, String> options;
+    private final int width;
+    private final int bandRows;
+    private final boolean smooth;
+    private final int timeoutMillis;
+    private final int[] remaining;
+    private final int[][] bandCounts;
+    private final float[][] bandSmooth;
+    private final boolean[] finished;
+    // Guarded by this
+    private final ArrayDeque<Tile> pending = new ArrayDeque<>();
+    // Tiles being computed and by how many workers, oldest first
+    private final Map<Tile, Integer> running = new LinkedHashMap<>();
+    private final Map<String, Integer> tilesByWorker = new LinkedHashMap<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private int exportBand;
+    private int liveWorkers;
+    private int retries;
+    private int backups;
+    private boolean closed;
+    private IOException failure;
+
+    // Start computing tiles of job on the workers right away. options are the HeadlessRenderer
+    // options the workers build the job from, see RenderJob.fromOptions. A worker that sends
+    // nothing for timeoutMillis is taken to be gone
+    public TileCoordinator(List<InetSocketAddress> workers, Map<String, String> options, RenderJob job,
+                           int timeoutMillis) {
+        if (workers.isEmpty()) throw new IllegalArgumentException("No render workers given");
+        if (timeoutMillis <= RenderWorker.HEARTBEAT_MILLIS) {
+            throw new IllegalArgumentException("The tile timeout must be longer than the "
+                    + RenderWorker.HEARTBEAT_MILLIS / 1000 + " s between worker heartbeats");
+        }
+        this.options = options;
+        this.width = job.view().width();
+        int height = job.view().height();
+        this.bandRows = ImageExporter.bandRows(width);
+        this.smooth = job.params().smooth();
+        this.timeoutMillis = timeoutMillis;
+        int bands = (height + bandRows - 1) / bandRows;
+        remaining = new int[bands];
+        bandCounts = new int[bands][];
+        bandSmooth = new float[bands][];
+        int id = 0;
+        for (int band = 0; band < bands; band++) {
+            int y = band * bandRows;
+            for (int x = 0; x < width; x += TILE_WIDTH) {
+                pending.add(new Tile(id++, band, x, y, Math.min(TILE_WIDTH, width - x), Math.min(bandRows, height - y)));
+                remaining[band]++;
+            }
+        }
+        finished = new boolean[id];
+        liveWorkers = workers.size();
+        for (InetSocketAddress address : workers) {
+            tilesByWorker.put(address.getHostString() + ":" + address.getPort(), 0);
+            Thread thread = new Thread(() -> work(address), "fractal-coordinator-" + address);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // Parse "host:port,host:port"
+    public static List<InetSocketAddress> parseWorkers(String value) {
+        List<InetSocketAddress> workers = new ArrayList<>();
+        for (String worker : value.split(",")) {
+            int colon = worker.lastIndexOf(':');
+            if (colon < 0) throw new IllegalArgumentException("Expected host:port but got: " + worker);
+            workers.add(InetSocketAddress.createUnresolved(worker.substring(0, colon).strip(),
+                    Integer.parseInt(worker.substring(colon + 1).strip())));
+        }
+        return workers;
+    }
+
+    // Wait for the tiles of a band and copy its counts out. Bands are written in order, and rows
+    // must be a whole band as ImageExporter asks for them
+    @Override
+    public void renderRows(int y0, int rows, int[] counts, float[] smooth) throws IOException {
+        int band = y0 / bandRows;
+        synchronized (this) {
+            exportBand = band;
+            notifyAll();
+            try {
+                while (remaining[band] > 0) {
+                    if (failure != null) throw new IOException(failure.getMessage(), failure);
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Render cancelled");
+            }
+            System.arraycopy(bandCounts[band], 0, counts, 0, rows * width);
+            if (smooth != null) System.arraycopy(bandSmooth[band], 0, smooth, 0, rows * width);
+            bandCounts[band] = null;
+            bandSmooth[band] = null;
+            exportBand = band + 1;
+            notifyAll();
+        }
+    }
+
+    // Tiles computed per worker and how many were retried or computed twice
+    public synchronized String summary() {
+        return "Tiles per worker: " + tilesByWorker + ", retried " + retries + ", computed twice " + backups;
+    }
+
+    // Stop handing out tiles and drop the worker connections
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already gone
+                }
+            }
+        }
+    }
+
+    // Compute tiles on one worker until none are left
+    private void work(InetSocketAddress address) {
+        String name = address.getHostString() + ":" + address.getPort();
+        Connection connection = null;
+        int failures = 0;
+        int[] counts = new int[0];
+        float[] fractions = new float[0];
+        try {
+            Tile tile;
+            while ((tile = next()) != null) {
+                int size = tile.width() * tile.height();
+                if (counts.length < size) {
+                    counts = new int[size];
+                    fractions = new float[size];
+                }
+                try {
+                    if (connection == null) connection = connect(address);
+                    connection.render(tile, counts, smooth ? fractions : null);
+                    failures = 0;
+                    deliver(tile, counts, fractions, name);
+                } catch (IOException e) {
+                    lost(tile);
+                    if (connection != null) connection.close();
+                    connection = null;
+                    // A worker that reports an error would only report it again
+                    failures = e instanceof WorkerException ? MAX_FAILURES : failures + 1;
+                    if (failures >= MAX_FAILURES) {
+                        workerGone(name, e);
+                        return;
+                    }
+                    Thread.sleep(500L * failures);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } finally {
+            if (connection != null) connection.close();
+        }
+    }
+
+    // The next tile for an idle worker, or null once the image is done or has failed
+    private synchronized Tile next() throws InterruptedException {
+        while (!closed && failure == null && exportBand < remaining.length) {
+            Tile tile = pending.peekFirst();
+            if (tile != null && finished[tile.id()]) {
+                pending.pollFirst();
+                continue;
+            }
+            if (tile != null && tile.band() < exportBand + WINDOW) {
+                pending.pollFirst();
+                running.merge(tile, 1, Integer::sum);
+                return tile;
+            }
+            // Nothing new to start: back up the oldest unfinished tile only one worker is on
+            for (Map.Entry<Tile, Integer> entry : running.entrySet()) {
+                if (entry.getValue() == 1 && !finished[entry.getKey().id()]) {
+                    entry.setValue(2);
+                    backups++;
+                    return entry.getKey();
+                }
+            }
+            wait();
+        }
+        return null;
+    }
+
+    // Store a computed tile unless another worker got there first. A finished tile leaves running
+    // at once, even if a backup is still on it, so that it is never backed up again
+    private synchronized void deliver(Tile tile, int[] counts, float[] fractions, String worker) {
+        running.remove(tile);
+        if (finished[tile.id()]) return;
+        finished[tile.id()] = true;
+        tilesByWorker.merge(worker, 1, Integer::sum);
+        int band = tile.band();
+        if (bandCounts[band] == null) {
+            bandCounts[band] = new int[width * bandRows];
+            if (smooth) bandSmooth[band] = new float[width * bandRows];
+        }
+        int offset = (tile.y() - band * bandRows) * width + tile.x();
+        for (int row = 0; row < tile.height(); row++) {
+            System.arraycopy(counts, row * tile.width(), bandCounts[band], offset + row * width, tile.width());
+            if (smooth) System.arraycopy(fractions, row * tile.width(), bandSmooth[band], offset + row * width, tile.width());
+        }
+        remaining[band]--;
+        notifyAll();
+    }
+
+    // Put a tile whose worker failed back in front, unless another worker is still on it
+    private synchronized void lost(Tile tile) {
+        Integer workers = running.computeIfPresent(tile, (t, n) -> n > 1 ? n - 1 : null);
+        if (workers == null && !finished[tile.id()]) {
+            pending.addFirst(tile);
+            retries++;
+        }
+        notifyAll();
+    }
+
+    private synchronized void workerGone(String worker, IOException cause) {
+        System.err.println("Dropping render worker " + worker + ": " + cause.getMessage());
+        if (--liveWorkers == 0 && failure == null) {
+            failure = new IOException("All render workers failed, last error: " + cause.getMessage(), cause);
+        }
+        notifyAll();
+    }
+
+    private Connection connect(InetSocketAddress address) throws IOException {
+        Socket socket = new Socket();
+        synchronized (sockets) {
+            sockets.add(socket);
+        }
+        socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), CONNECT_TIMEOUT_MILLIS);
+        socket.setSoTimeout(timeoutMillis);
+        socket.setTcpNoDelay(true);
+        Connection connection = new Connection(socket);
+        connection.out.writeInt(RenderWorker.MAGIC);
+        connection.out.writeInt(RenderWorker.VERSION);
+        RenderWorker.writeOptions(connection.out, options);
+        connection.out.flush();
+        connection.readStatus();
+        return connection;
+    }
+
+    // An error the worker reported itself, as opposed to a lost connection. Only thrown within the
+    // coordinator and never serialized
+    @SuppressWarnings("serial")
+    private static class WorkerException extends IOException {
+        WorkerException(String message) {
+            super(message);
+        }
+    }
+
+    private class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private byte[] bytes = new byte[0];
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void render(Tile tile, int[] counts, float[] fractions) throws IOException {
+            out.writeByte(RenderWorker.TILE);
+            out.writeInt(tile.x());
+            out.writeInt(tile.y());
+            out.writeInt(tile.width());
+            out.writeInt(tile.height());
+            out.flush();
+            readStatus();
+            int size = tile.width() * tile.height();
+            if (bytes.length < 4 * size) bytes = new byte[4 * size];
+            in.readFully(bytes, 0, 4 * size);
+            ByteBuffer.wrap(bytes, 0, 4 * size).asIntBuffer().get(counts, 0, size);
+            if (fractions != null) {
+                in.readFully(bytes, 0, 4 * size);
+                ByteBuffer.wrap(bytes, 0, 4 * size).asFloatBuffer().get(fractions, 0, size);
+            }
+        }
+
+        // The worker's reply, skipping the BUSY it sends while computing. Each of them restarts the
+        // socket timeout
+        void readStatus() throws IOException {
+            byte status = in.readByte();
+            while (status == RenderWorker.BUSY) status = in.readByte();
+            if (status == RenderWorker.ERROR) throw new WorkerException(in.readUTF());
+            if (status != RenderWorker.OK) throw new IOException("Unexpected reply from render worker: " + status);
+        }
+
+        void close() {
+            try {
+                out.writeByte(RenderWorker.DONE);
+                out.flush();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+            synchronized (sockets) {
+                sockets.remove(socket);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.fractalgenerator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+// JFR event for one tile computed by EscapeTimeEngine. There are hundreds per frame, so it is off
+// unless enabled in the recording settings, and then only slow tiles are recorded by default
+@Name("org.example.fractalgenerator.TileRendered")
+@Label("Tile Rendered")
+@Category({"Fractal Generator", "Rendering"})
+@Description("A block of pixels computed by one worker of the escape-time engine")
+@Enabled(false)
+@Threshold("1 ms")
+public class TileRenderedEvent extends jdk.jfr.Event {
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Step")
+    @Description("Distance between computed pixels in this pass")
+    int step;
+
+    @Label("Pixels")
+    long pixels;
+
+    @Label("Iterations")
+    long iterations;
+}
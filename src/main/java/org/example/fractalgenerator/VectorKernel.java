@@ -0,0 +1,56 @@
+package org.example.fractalgenerator;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+// z = z^2 + c on a full SIMD register of points at once with the incubating Vector API. Each lane
+// is masked off once its point escapes, and the lanes do exactly the scalar loop's multiplications
+// and additions in the same order, so the counts are bit-identical to MandelbrotKernel.
+// Needs --add-modules jdk.incubator.vector at runtime, see EscapeTimeEngine.isVectorAvailable
+public class VectorKernel implements BatchKernel {
+    // Must be a constant for the JIT to compile the vector operations to SIMD instructions
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final MandelbrotKernel scalar = new MandelbrotKernel();
+
+    // Number of points iterated together
+    public int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public void iterate(double[] zx, double[] zy, double[] cx, double[] cy, int count, int maxIterations, int[] out) {
+        int lanes = SPECIES.length();
+        DoubleVector four = DoubleVector.broadcast(SPECIES, 4.0);
+        DoubleVector limit = DoubleVector.broadcast(SPECIES, maxIterations);
+        double[] counts = new double[lanes];
+        int i = 0;
+        for (; i <= count - lanes; i += lanes) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, zx, i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, zy, i);
+            DoubleVector cX = DoubleVector.fromArray(SPECIES, cx, i);
+            DoubleVector cY = DoubleVector.fromArray(SPECIES, cy, i);
+            DoubleVector n = DoubleVector.zero(SPECIES);
+            VectorMask<Double> active = x.mul(x).add(y.mul(y)).lt(four).and(n.lt(limit));
+            while (active.anyTrue()) {
+                DoubleVector xx = x.mul(x);
+                DoubleVector yy = y.mul(y);
+                DoubleVector nextX = xx.sub(yy).add(cX);
+                DoubleVector nextY = x.mul(2.0).mul(y).add(cY);
+                x = x.blend(nextX, active);
+                y = y.blend(nextY, active);
+                n = n.add(1.0, active);
+                active = x.mul(x).add(y.mul(y)).lt(four).and(n.lt(limit));
+            }
+            n.intoArray(counts, 0);
+            for (int lane = 0; lane < lanes; lane++) {
+                out[i + lane] = (int) counts[lane];
+            }
+        }
+        // Points left over after the last full register
+        for (; i < count; i++) {
+            out[i] = scalar.iterate(zx[i], zy[i], cx[i], cy[i], maxIterations);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.fractalgenerator;
+
+// Maps canvas pixels to fractal coordinates for a given zoom factor and pan offset
+public record Viewport(int width, int height, double zoom, double offsetX, double offsetY) {
+
+    // Real part of the fractal coordinate under pixel column x
+    public double toFractalX(double x) {
+        return 1.5 * (x - width/2) / (0.5 * zoom * width) - offsetX;
+    }
+
+    // Imaginary part of the fractal coordinate under pixel row y
+    public double toFractalY(double y) {
+        return (y - height/2) / (0.5 * zoom * height) - offsetY;
+    }
+
+    // Pixel column of the real part fx, the inverse of toFractalX
+    public double toPixelX(double fx) {
+        return width/2 + (fx + offsetX) * (0.5 * zoom * width) / 1.5;
+    }
+
+    // Pixel row of the imaginary part fy, the inverse of toFractalY
+    public double toPixelY(double fy) {
+        return height/2 + (fy + offsetY) * (0.5 * zoom * height);
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.fractalgenerator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The interior shortcuts must not change a single count, and subdivision may only paint over
+// details thinner than a pixel
+class AcceleratedMandelbrotKernelTest {
+    private static final int MAX_ITERATIONS = 2000;
+    private static final MandelbrotKernel PLAIN = new MandelbrotKernel();
+    private static final AcceleratedMandelbrotKernel EXACT = new AcceleratedMandelbrotKernel(false);
+
+    // Whole set, Seahorse Valley, the cusp of the cardioid, the junction of the cardioid and the
+    // period-2 bulb, and the period-3 bulb, as zoom and offsets
+    private static final double[][] VIEWS = {
+            {1, 0.5, 0},
+            {60, 0.745, -0.11},
+            {300, -0.25, 0},
+            {200, 0.75, 0},
+            {12, 0.1226, -0.7449},
+    };
+
+    @Test
+    void cardioidAndBulbAreInsideTheSet() {
+        int inside = 0;
+        for (int i = 0; i < 2000; i++) {
+            double t = 2 * Math.PI * i / 2000;
+            // Just inside the cardioid c = e^it / 2 - e^2it / 4 and the bulb |c + 1| = 1/4
+            for (double scale : new double[]{0.5, 0.9, 0.99}) {
+                double cx = scale * (Math.cos(t) / 2 - Math.cos(2 * t) / 4);
+                double cy = scale * (Math.sin(t) / 2 - Math.sin(2 * t) / 4);
+                inside += checkInside(cx, cy);
+                inside += checkInside(-1 + scale * 0.25 * Math.cos(t), scale * 0.25 * Math.sin(t));
+            }
+        }
+        assertTrue(inside > 8000, "only " + inside + " points were taken as inside");
+    }
+
+    // Count the point if the shortcut takes it as inside, and check it really is
+    private static int checkInside(double cx, double cy) {
+        if (!AcceleratedMandelbrotKernel.inCardioidOrBulb(cx, cy)) return 0;
+        assertEquals(MAX_ITERATIONS, PLAIN.iterate(cx, cy, cx, cy, MAX_ITERATIONS), "at " + cx + ", " + cy);
+        assertEquals(MAX_ITERATIONS, EXACT.iterate(cx, cy, cx, cy, MAX_ITERATIONS), "at " + cx + ", " + cy);
+        return 1;
+    }
+
+    // Around the period-3 bulb and along the boundary, outside the cardioid and period-2 bulb, it
+    // is cycle detection that stops the inside points early, and the escaping points next to them
+    // must still run to their full count
+    @Test
+    void cycleDetectionKeepsEveryCount() {
+        int cycling = 0;
+        int escaping = 0;
+        for (double[] area : new double[][]{{-0.1226, 0.7449, 0.12}, {-1.7548, 0, 0.03}, {0.25, 0, 0.02},
+                {-0.75, 0.1, 0.1}, {0.3, 0.5, 0.1}}) {
+            for (int j = 0; j < 200; j++) {
+                for (int i = 0; i < 200; i++) {
+                    double cx = area[0] + area[2] * (i / 100.0 - 1);
+                    double cy = area[1] + area[2] * (j / 100.0 - 1);
+                    int expected = PLAIN.iterate(cx, cy, cx, cy, MAX_ITERATIONS);
+                    assertEquals(expected, EXACT.iterate(cx, cy, cx, cy, MAX_ITERATIONS), "at " + cx + ", " + cy);
+                    if (AcceleratedMandelbrotKernel.inCardioidOrBulb(cx, cy)) continue;
+                    if (expected == MAX_ITERATIONS) cycling++;
+                    else if (expected > 50) escaping++;
+                }
+            }
+        }
+        // Both kinds of point near the boundary were actually tested
+        assertTrue(cycling > 1000, "only " + cycling + " inside points outside the shortcuts");
+        assertTrue(escaping > 1000, "only " + escaping + " slowly escaping points");
+    }
+
+    @Test
+    void exactModeRendersTheSameImage() {
+        EscapeTimeEngine engine = new EscapeTimeEngine(2);
+        engine.setVectorized(false);
+        try {
+            for (double[] v : VIEWS) {
+                Viewport view = new Viewport(211, 141, v[0], v[1], v[2]);
+                int pixels = view.width() * view.height();
+                int[] expected = new int[pixels];
+                int[] actual = new int[pixels];
+                float[] expectedSmooth = new float[pixels];
+                float[] actualSmooth = new float[pixels];
+                engine.renderRegion(view, new RenderParams(PLAIN, 0, 0, MAX_ITERATIONS), 0, 0, view.width(),
+                        view.height(), expected, expectedSmooth, 0, view.width());
+                engine.renderRegion(view, new RenderParams(EXACT, 0, 0, MAX_ITERATIONS), 0, 0, view.width(),
+                        view.height(), actual, actualSmooth, 0, view.width());
+                assertArrayEquals(expected, actual, "zoom " + v[0]);
+                assertArrayEquals(expectedSmooth, actualSmooth, "zoom " + v[0]);
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    // A subdivided image may differ from the exact one only where a detail too thin to reach the
+    // border samples of a rectangle was painted over: in a few pixels, each taking a count that
+    // one of its neighbours has in the exact image
+    @Test
+    void subdivideOnlyPaintsOverSubPixelDetails() {
+        EscapeTimeEngine engine = new EscapeTimeEngine(2);
+        try {
+            for (double[] v : VIEWS) {
+                Viewport view = new Viewport(301, 203, v[0], v[1], v[2]);
+                int width = view.width();
+                int[] exact = new int[width * view.height()];
+                int[] subdivided = new int[exact.length];
+                engine.render(view, new RenderParams(PLAIN, 0, 0, MAX_ITERATIONS), exact);
+                engine.render(view, new RenderParams(new AcceleratedMandelbrotKernel(true), 0, 0, MAX_ITERATIONS),
+                        subdivided);
+                int different = 0;
+                for (int i = 0; i < exact.length; i++) {
+                    if (subdivided[i] == exact[i]) continue;
+                    different++;
+                    boolean neighbour = false;
+                    for (int dy = -1; dy <= 1; dy++) {
+                        for (int dx = -1; dx <= 1; dx++) {
+                            int x = i % width + dx;
+                            int y = i / width + dy;
+                            if (x >= 0 && y >= 0 && x < width && y < view.height()
+                                    && exact[y * width + x] == subdivided[i]) {
+                                neighbour = true;
+                            }
+                        }
+                    }
+                    assertTrue(neighbour, "pixel " + i + " at zoom " + v[0] + " painted " + subdivided[i]
+                            + " instead of " + exact[i]);
+                }
+                assertTrue(different <= exact.length / 1000, different + " pixels differ at zoom " + v[0]);
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.fractalgenerator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// "z^2 + c" must give the counts of MandelbrotKernel whether it is compiled or interpreted, and
+// formulas that do not parse must be reported with the position of the error
+class FormulaKernelTest {
+    private static final MandelbrotKernel MANDELBROT = new MandelbrotKernel();
+
+    @Test
+    void compiledQuadraticMatchesMandelbrot() {
+        assumeTrue(FormulaKernel.isCompilerAvailable(), "No system Java compiler");
+        assertMatchesMandelbrot(FormulaKernel.create("Quadratic", "z^2 + c"));
+    }
+
+    @Test
+    void interpretedQuadraticMatchesMandelbrot() {
+        assertMatchesMandelbrot(FormulaKernel.interpret("Quadratic", "z^2 + c"));
+    }
+
+    // The registry compiles a formula the first time it is asked for
+    @Test
+    void registeredFormulaMatchesMandelbrot() {
+        FractalRegistry registry = new FractalRegistry();
+        registry.addFormula("Quadratic", "z^2 + c");
+        assertTrue(registry.contains("Quadratic"));
+        assertFalse(registry.isJulia("Quadratic"));
+        assertMatchesMandelbrot(registry.get("Quadratic"));
+        assertTrue(registry.isReady("Quadratic"));
+    }
+
+    // A grid over the whole set with many points near its boundary, at an iteration count where
+    // rounding differences would have long shown
+    private static void assertMatchesMandelbrot(FractalKernel kernel) {
+        for (int j = 0; j <= 120; j++) {
+            for (int i = 0; i <= 180; i++) {
+                double cx = -2.1 + 2.7 * i / 180;
+                double cy = -1.2 + 2.4 * j / 120;
+                assertEquals(MANDELBROT.iterate(cx, cy, cx, cy, 1000), kernel.iterate(cx, cy, cx, cy, 1000),
+                        kernel.name() + " at " + cx + ", " + cy);
+            }
+        }
+    }
+
+    // What "Add Formula..." shows for a formula that does not parse
+    @Test
+    void parseErrorsGiveTheirPosition() {
+        assertParseError("z^2 +", "Unexpected end of formula at position 6");
+        assertParseError("z^2 + q", "Unknown name 'q' at position 7");
+        assertParseError("sin z", "Expected '(' at position 5");
+        assertParseError("(z^2 + c", "Expected ')' at position 9");
+        assertParseError("z^2 + c)", "Unexpected ')' at position 8");
+        assertParseError("z^2 $ c", "Unexpected '$' at position 5");
+        assertParseError("z^2 + 1e999", "Bad number at position 7");
+        assertParseError("", "Unexpected end of formula at position 1");
+    }
+
+    private static void assertParseError(String formula, String message) {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> Formula.parse(formula),
+                formula);
+        assertEquals(message + " of formula: " + formula, error.getMessage());
+    }
+
+    // A formula that does not parse is not registered
+    @Test
+    void registryRejectsFormulasThatDoNotParse() {
+        FractalRegistry registry = new FractalRegistry();
+        assertThrows(IllegalArgumentException.class, () -> registry.addFormula("Broken", "z^2 +"));
+        assertFalse(registry.contains("Broken"));
+    }
+
+    // Formulas may contain any whitespace, including line breaks and the unicode line separator,
+    // none of which may end the string literal the source is embedded in when it is compiled
+    @Test
+    void sourceWithControlCharactersCompiles() {
+        assumeTrue(FormulaKernel.isCompilerAvailable(), "No system Java compiler");
+        String formula = "z^2\n+\tc\r\n\u000b\f\u2028";
+        FractalKernel compiled = FormulaKernel.create("Line Breaks", formula);
+        assertEquals("Line Breaks = " + formula, compiled.identity());
+        assertEquals(FormulaKernel.interpret("Line Breaks", formula).identity(), compiled.identity());
+        assertMatchesMandelbrot(compiled);
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.fractalgenerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The histogram must give what exact counting gives while every count has a bin of its own, and
+// deeper frames may only be off by less than a bin, on the side that keeps frames within budget
+class IterationBudgetTest {
+    // Up to and beyond the histogram's 4096 bins, up to the highest iteration count
+    private static final int[] MAX_ITERATIONS = {150, 1000, 4096, 4097, 100_000, IterationBudget.MAX_ITERATIONS};
+
+    @Test
+    void affordableCapMatchesExactCost() {
+        for (int max : MAX_ITERATIONS) {
+            for (long seed = 0; seed < 5; seed++) {
+                int[] counts = counts(max, seed);
+                long full = cost(counts, max);
+                for (double share : new double[]{0, 0.001, 0.01, 0.1, 0.3, 0.5, 0.9, 0.999, 1, 2}) {
+                    double iterations = share * full;
+                    int exact = exactCap(counts, max, iterations);
+                    int cap = IterationBudget.affordableCap(counts, max, iterations);
+                    String name = "max " + max + ", seed " + seed + ", share " + share;
+                    if (max <= 4096) {
+                        assertEquals(exact, cap, name);
+                    } else {
+                        assertTrue(cap <= exact && cap > exact - binWidth(max), name + ": " + cap + " for " + exact);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void observeMatchesExactQuantile() {
+        for (int max : MAX_ITERATIONS) {
+            for (long seed = 0; seed < 5; seed++) {
+                int[] counts = counts(max, seed);
+                IterationBudget budget = new IterationBudget();
+                budget.observe(counts, max);
+                // What next picks from the exact count, and from the highest count of its bin
+                int late = exactLateEscape(counts, max);
+                int lowest = next(late);
+                int highest = next(Math.min(late + binWidth(max) - 1, max - 1));
+                String name = "max " + max + ", seed " + seed;
+                if (max <= 4096) {
+                    assertEquals(lowest, budget.next(1), name);
+                } else {
+                    int picked = budget.next(1);
+                    assertTrue(picked >= lowest && picked <= highest, name + ": " + picked + " for " + lowest);
+                }
+            }
+        }
+    }
+
+    // A frame that did not escape anywhere leaves the estimate alone
+    @Test
+    void frameWithoutEscapesKeepsEstimate() {
+        IterationBudget budget = new IterationBudget();
+        budget.observe(counts(1000, 1), 1000);
+        int estimate = budget.next(1);
+        int[] inside = new int[1000];
+        Arrays.fill(inside, 1000);
+        budget.observe(inside, 1000);
+        assertEquals(estimate, budget.next(1));
+    }
+
+    // Counts like those of a frame near the boundary: a share of pixels inside the set, most escaping
+    // early and a long tail of late escapers, with some counts above max left from a deeper frame
+    private static int[] counts(int max, long seed) {
+        Random random = new Random(seed);
+        int[] counts = new int[20_000];
+        for (int i = 0; i < counts.length; i++) {
+            double u = random.nextDouble();
+            if (u < 0.25) {
+                counts[i] = random.nextInt(50) == 0 ? max + random.nextInt(1000) : max;
+            } else {
+                double count = 2 + 10 / Math.pow(random.nextDouble(), 1.3);
+                counts[i] = (int) Math.min(max, count);
+            }
+        }
+        return counts;
+    }
+
+    // Iterations of a frame capped at cap, counts above it stopping at it
+    private static long cost(int[] counts, int cap) {
+        long sum = 0;
+        for (int count : counts) {
+            sum += Math.min(count, cap);
+        }
+        return sum;
+    }
+
+    // The highest cap up to max whose cost fits, by binary search over every cap
+    private static int exactCap(int[] counts, int max, double iterations) {
+        int low = 0;
+        int high = max;
+        while (low < high) {
+            int mid = (int) ((low + (long) high + 1) / 2);
+            if (cost(counts, mid) <= iterations) low = mid;
+            else high = mid - 1;
+        }
+        return Math.max(Math.min(IterationBudget.MIN_ITERATIONS, max), low);
+    }
+
+    // The count 99.9% of the escaping pixels escaped by
+    private static int exactLateEscape(int[] counts, int max) {
+        int[] escaped = Arrays.stream(counts).filter(count -> count < max).sorted().toArray();
+        return escaped[(int) Math.ceil(escaped.length * 0.999) - 1];
+    }
+
+    private static int next(int lateEscape) {
+        return (int) Math.min(IterationBudget.MAX_ITERATIONS,
+                Math.max(IterationBudget.fromZoom(1), 2L * lateEscape));
+    }
+
+    private static int binWidth(int max) {
+        return (max + 4095) / 4096;
+    }
+}
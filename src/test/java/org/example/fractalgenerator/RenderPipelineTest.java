@@ -0,0 +1,100 @@
+package org.example.fractalgenerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A time-boxed frame, rendered at a lower cap and then deepened, must end up as the frame rendered
+// at full depth from the start
+class RenderPipelineTest {
+    private static final int[] PASSES = {8, 4, 2, 1};
+
+    // Seahorse Valley, a deeper view on the boundary with many late escapers, and a Julia set, as
+    // zoom, offsets and iteration count
+    private static final double[][] VIEWS = {
+            {60, 0.745, -0.11, 3000},
+            {2000, 0.7436, -0.1318, 5000},
+            {25, -0.3, -0.2, 2000},
+    };
+
+    @Test
+    void deepenedFrameMatchesFullRender() {
+        EscapeTimeEngine engine = new EscapeTimeEngine(2);
+        try {
+            for (int v = 0; v < VIEWS.length; v++) {
+                Viewport view = new Viewport(173, 117, VIEWS[v][0], VIEWS[v][1], VIEWS[v][2]);
+                int max = (int) VIEWS[v][3];
+                for (boolean smooth : new boolean[]{false, true}) {
+                    RenderParams params = v < 2 ? new RenderParams(new MandelbrotKernel(), 0, 0, max, smooth)
+                            : new RenderParams(new JuliaKernel(), -0.8, 0.156, max, smooth);
+                    for (int cap : new int[]{100, 250, max / 2}) {
+                        assertDeepensToFullRender(engine, view, params, cap,
+                                "view " + v + " from cap " + cap + (smooth ? ", smooth" : ""));
+                    }
+                }
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    private static void assertDeepensToFullRender(EscapeTimeEngine engine, Viewport view, RenderParams params,
+                                                  int cap, String name) {
+        int pixels = view.width() * view.height();
+        int[] expected = new int[pixels];
+        float[] expectedSmooth = params.smooth() ? new float[pixels] : null;
+        render(engine, view, params, expected, expectedSmooth);
+
+        // The passes at the cap, as the pipeline renders them once the coarsest pass set it
+        int[] actual = new int[pixels];
+        float[] actualSmooth = params.smooth() ? new float[pixels] : null;
+        RenderParams capped = new RenderParams(params.kernel(), params.juliaCX(), params.juliaCY(), cap,
+                params.smooth());
+        render(engine, view, capped, actual, actualSmooth);
+
+        List<Integer> caps = new ArrayList<>();
+        assertTrue(RenderPipeline.deepen(engine, view, params, cap, actual, actualSmooth, new int[pixels],
+                step -> caps.add(step.maxIterations()), () -> false), name);
+        assertArrayEquals(expected, actual, name);
+        if (params.smooth()) assertArrayEquals(expectedSmooth, actualSmooth, name);
+
+        // Four times deeper each step, ending at full depth
+        int last = cap;
+        for (int step : caps) {
+            assertEquals(Math.min(params.maxIterations(), 4L * last), step, name);
+            last = step;
+        }
+        assertEquals(params.maxIterations(), last, name);
+    }
+
+    private static void render(EscapeTimeEngine engine, Viewport view, RenderParams params, int[] iterations,
+                               float[] smooth) {
+        for (int pass = 0; pass < PASSES.length; pass++) {
+            assertTrue(engine.renderPass(view, params, PASSES[pass], pass > 0, iterations, smooth, () -> false));
+        }
+    }
+
+    // A newer view stops the deepening before its first step is shown
+    @Test
+    void staleFrameStopsDeepening() {
+        EscapeTimeEngine engine = new EscapeTimeEngine(2);
+        try {
+            Viewport view = new Viewport(64, 48, 60, 0.745, -0.11);
+            RenderParams params = new RenderParams(new MandelbrotKernel(), 0, 0, 3000);
+            int[] iterations = new int[view.width() * view.height()];
+            engine.render(view, new RenderParams(params.kernel(), 0, 0, 100), iterations);
+            List<RenderParams> steps = new ArrayList<>();
+            assertFalse(RenderPipeline.deepen(engine, view, params, 100, iterations, null,
+                    new int[iterations.length], steps::add, () -> true));
+            assertTrue(steps.isEmpty());
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
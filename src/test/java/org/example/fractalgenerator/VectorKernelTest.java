@@ -0,0 +1,131 @@
+package org.example.fractalgenerator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// The SIMD kernel must give the counts of the scalar kernel for every point, whether the point is
+// in a full register or in the tail after the last one, and the engine must give the same image
+// with either. Needs --add-modules jdk.incubator.vector, as configured for surefire in the pom
+class VectorKernelTest {
+    private static final MandelbrotKernel SCALAR = new MandelbrotKernel();
+
+    // A view at any size
+    private record Scene(double zoom, double offsetX, double offsetY, RenderParams params) {
+        Viewport view(int width, int height) {
+            return new Viewport(width, height, zoom, offsetX, offsetY);
+        }
+    }
+
+    // Views of the Mandelbrot set and two Julia sets, mostly near the boundary where neighbouring
+    // points escape after very different counts or not at all
+    private static final Scene[] SCENES = {
+            new Scene(1, 0.5, 0, new RenderParams(new MandelbrotKernel(), 0, 0, 500)),
+            new Scene(60, 0.745, -0.11, new RenderParams(new MandelbrotKernel(), 0, 0, 500)),
+            new Scene(2000, 0.7436, -0.1318, new RenderParams(new MandelbrotKernel(), 0, 0, 3000)),
+            new Scene(1, 0, 0, new RenderParams(new JuliaKernel(), -0.7, 0.27015, 500)),
+            new Scene(25, -0.3, -0.2, new RenderParams(new JuliaKernel(), -0.8, 0.156, 1000)),
+    };
+
+    @Test
+    void batchesMatchScalarKernelForEveryTailLength() {
+        assumeTrue(EscapeTimeEngine.isVectorAvailable(), "Vector API module not present");
+        VectorKernel vector = new VectorKernel();
+        int lanes = vector.lanes();
+        // Every number of points from none to a few registers, so each tail length is covered
+        for (int count = 0; count <= 3 * lanes + 1; count++) {
+            for (boolean julia : new boolean[]{false, true}) {
+                double[] zx = new double[count];
+                double[] zy = new double[count];
+                double[] cx = new double[count];
+                double[] cy = new double[count];
+                for (int i = 0; i < count; i++) {
+                    // A line across the boundary near the Seahorse Valley
+                    zx[i] = -0.76 + 0.003 * i;
+                    zy[i] = 0.09 + 0.001 * i;
+                    cx[i] = julia ? -0.7 : zx[i];
+                    cy[i] = julia ? 0.27015 : zy[i];
+                }
+                int[] counts = new int[count];
+                vector.iterate(zx, zy, cx, cy, count, 1000, counts);
+                for (int i = 0; i < count; i++) {
+                    assertEquals(SCALAR.iterate(zx[i], zy[i], cx[i], cy[i], 1000), counts[i],
+                            "point " + i + " of " + count + (julia ? " (Julia)" : ""));
+                }
+            }
+        }
+    }
+
+    @Test
+    void engineImagesMatchScalarEngine() {
+        assumeTrue(EscapeTimeEngine.isVectorAvailable(), "Vector API module not present");
+        EscapeTimeEngine scalar = new EscapeTimeEngine(2);
+        EscapeTimeEngine vector = new EscapeTimeEngine(2);
+        scalar.setVectorized(false);
+        assumeTrue(vector.setVectorized(true), "SIMD kernel not available");
+        int lanes = new VectorKernel().lanes();
+        // A whole tile, widths that leave a partial tile, and widths whose rows end in a partial
+        // register
+        int[] widths = {EscapeTimeEngine.TILE_SIZE, EscapeTimeEngine.TILE_SIZE + 1,
+                2 * EscapeTimeEngine.TILE_SIZE + lanes - 1, 97, 131};
+        try {
+            for (int v = 0; v < SCENES.length; v++) {
+                RenderParams params = SCENES[v].params();
+                for (int width : widths) {
+                    Viewport view = SCENES[v].view(width, 2 * width / 3 + 1);
+                    String name = "view " + v + " at " + view.width() + "x" + view.height();
+                    int pixels = view.width() * view.height();
+
+                    int[] expected = new int[pixels];
+                    int[] actual = new int[pixels];
+                    scalar.render(view, params, expected);
+                    vector.render(view, params, actual);
+                    assertArrayEquals(expected, actual, name);
+
+                    // Smooth values always come from the scalar kernel, and the counts with them
+                    float[] expectedSmooth = new float[pixels];
+                    float[] actualSmooth = new float[pixels];
+                    scalar.renderRegion(view, params, 0, 0, view.width(), view.height(), expected,
+                            expectedSmooth, 0, view.width());
+                    vector.renderRegion(view, params, 0, 0, view.width(), view.height(), actual,
+                            actualSmooth, 0, view.width());
+                    assertArrayEquals(expected, actual, name + ", smooth");
+                    assertArrayEquals(expectedSmooth, actualSmooth, name + ", smooth");
+                }
+            }
+        } finally {
+            scalar.shutdown();
+            vector.shutdown();
+        }
+    }
+
+    // The progressive passes leave out the pixels of the previous pass, so the batched rows are
+    // shorter and of varying length
+    @Test
+    void progressivePassesMatchScalarEngine() {
+        assumeTrue(EscapeTimeEngine.isVectorAvailable(), "Vector API module not present");
+        EscapeTimeEngine scalar = new EscapeTimeEngine(2);
+        EscapeTimeEngine vector = new EscapeTimeEngine(2);
+        scalar.setVectorized(false);
+        assumeTrue(vector.setVectorized(true), "SIMD kernel not available");
+        try {
+            for (int v = 0; v < SCENES.length; v++) {
+                RenderParams params = SCENES[v].params();
+                Viewport view = SCENES[v].view(203, 117);
+                int[] expected = new int[view.width() * view.height()];
+                int[] actual = new int[expected.length];
+                for (int step = 8; step >= 1; step /= 2) {
+                    boolean refine = step < 8;
+                    scalar.renderPass(view, params, step, refine, expected, () -> false);
+                    vector.renderPass(view, params, step, refine, actual, () -> false);
+                    assertArrayEquals(expected, actual, "view " + v + ", step " + step);
+                }
+            }
+        } finally {
+            scalar.shutdown();
+            vector.shutdown();
+        }
+    }
+}